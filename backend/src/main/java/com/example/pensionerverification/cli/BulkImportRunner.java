@@ -0,0 +1,63 @@
+package com.example.pensionerverification.cli;
+
+import com.example.pensionerverification.service.BulkImportService;
+import com.example.pensionerverification.service.BulkImportService.ImportResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Runs a bulk import from local files and exits, for district onboardings too
+ * large to upload through the multipart endpoint:
+ *
+ * java -jar pensioner-verification.jar --import.csv=users.csv --import.photos=photos.zip [--import.id=district-7]
+ */
+@Component
+public class BulkImportRunner implements ApplicationRunner {
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!args.containsOption("import.csv") || !args.containsOption("import.photos")) {
+            return;
+        }
+
+        String importId = args.containsOption("import.id") ? firstValue(args.getOptionValues("import.id")) : null;
+        int exitCode = 0;
+        try {
+            ImportResult result = bulkImportService.importUsers(
+                    Paths.get(firstValue(args.getOptionValues("import.csv"))),
+                    Paths.get(firstValue(args.getOptionValues("import.photos"))),
+                    importId);
+
+            System.out.printf("Import %s finished: %d imported, %d skipped (existing), %d failed in %d ms (%.1f rows/s)%n",
+                    result.getImportId(), result.getImported(), result.getSkippedExisting(), result.getFailed(),
+                    result.getElapsedMillis(), result.getRowsPerSecond());
+            if (result.getResumedAfterRow() > 0) {
+                System.out.println("Resumed after row " + result.getResumedAfterRow());
+            }
+            result.getErrors().forEach(System.err::println);
+        } catch (Exception e) {
+            System.err.println("Import failed, re-run with the same arguments to resume: " + e.getMessage());
+            exitCode = 1;
+        }
+
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+
+    private String firstValue(List<String> values) {
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
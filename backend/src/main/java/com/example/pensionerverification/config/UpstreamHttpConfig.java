@@ -0,0 +1,89 @@
+package com.example.pensionerverification.config;
+
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * One pooled HTTP client for every call to the HuggingFace Space, so the
+ * connections opened during warm-up are the ones verifications reuse. Idle
+ * connections stay pooled for idle-timeout-ms (unless the Space announces a
+ * shorter Keep-Alive), which is longer than the keep-alive ping interval.
+ */
+@Configuration
+public class UpstreamHttpConfig {
+
+    @Value("${pensioner.upstream.max-connections:20}")
+    private int maxConnections;
+
+    @Value("${pensioner.upstream.connect-timeout-ms:10000}")
+    private long connectTimeoutMillis;
+
+    @Value("${pensioner.upstream.idle-timeout-ms:900000}")
+    private long idleTimeoutMillis;
+
+    // A cold model can take minutes to answer its first prediction
+    @Value("${pensioner.upstream.predict-timeout-ms:300000}")
+    private long predictTimeoutMillis;
+
+    @Value("${pensioner.upstream.response-timeout-ms:60000}")
+    private long responseTimeoutMillis;
+
+    @Bean
+    public CloseableHttpClient upstreamHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        // The Space may have dropped a connection that sat idle; check before reusing it
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(5))
+                        .build())
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMillis))
+                .build();
+    }
+
+    /** For /predict calls. */
+    @Bean
+    public RestTemplate upstreamPredictRestTemplate(CloseableHttpClient upstreamHttpClient) {
+        return new RestTemplate(requestFactory(upstreamHttpClient, predictTimeoutMillis));
+    }
+
+    /** For pings and embeddings, which must not hold a scheduler or worker thread for long. */
+    @Bean
+    public RestTemplate upstreamRestTemplate(CloseableHttpClient upstreamHttpClient) {
+        return new RestTemplate(requestFactory(upstreamHttpClient, responseTimeoutMillis));
+    }
+
+    private HttpComponentsClientHttpRequestFactory requestFactory(HttpClient client, long timeoutMillis) {
+        RequestConfig config = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                .setResponseTimeout(Timeout.ofMilliseconds(timeoutMillis))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(idleTimeoutMillis))
+                .build();
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(client);
+        // Both templates share the pool; only the per-request timeouts differ
+        requestFactory.setHttpContextFactory((method, uri) -> {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(config);
+            return context;
+        });
+        return requestFactory;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.pensionerverification.controller;
+
+import com.example.pensionerverification.service.UpstreamWarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/health")
+@CrossOrigin(origins = "http://localhost:4200")
+public class HealthController {
+
+    @Autowired
+    private UpstreamWarmupService upstreamWarmupService;
+
+    // Ready only once the verification upstream has answered (see UpstreamWarmupService)
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, Object>> getReadiness() {
+        boolean ready = upstreamWarmupService.isReady();
+        Map<String, Object> response = new HashMap<>();
+        response.put("ready", ready);
+        // Ready without the upstream having answered: the startup pings hit the daily cap
+        response.put("degraded", upstreamWarmupService.isDegraded());
+        response.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(response);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.pensionerverification.controller;
+
+import com.example.pensionerverification.service.DuplicatePictureService;
+import com.example.pensionerverification.service.ReferenceEmbeddingService;
+import com.example.pensionerverification.service.UpstreamMetrics;
+import com.example.pensionerverification.upload.UploadBudget;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+@CrossOrigin(origins = "http://localhost:4200")
+public class MetricsController {
+
+    @Autowired
+    private UpstreamMetrics upstreamMetrics;
+
+    @Autowired
+    private UploadBudget uploadBudget;
+
+    @Autowired
+    private DuplicatePictureService duplicatePictureService;
+
+    @Autowired
+    private ReferenceEmbeddingService referenceEmbeddingService;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("upstream", upstreamMetrics.snapshot());
+        metrics.put("uploadBudget", uploadBudget.snapshot());
+        metrics.put("duplicatePictures", duplicatePictureService.snapshot());
+        metrics.put("referenceEmbeddings", referenceEmbeddingService.snapshot());
+        metrics.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(metrics);
+    }
+}
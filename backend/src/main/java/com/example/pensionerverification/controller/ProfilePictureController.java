@@ -0,0 +1,143 @@
+package com.example.pensionerverification.controller;
+
+import com.example.pensionerverification.model.User;
+import com.example.pensionerverification.repository.UserRepository;
+import com.example.pensionerverification.service.ProfilePictureService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/users")
+@CrossOrigin(origins = "http://localhost:4200")
+public class ProfilePictureController {
+
+    // Same cut-off Tomcat's DefaultServlet uses before handing a file to sendfile
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProfilePictureService profilePictureService;
+
+    @GetMapping("/{username}/profile-picture")
+    public void getProfilePicture(@PathVariable String username,
+            @RequestParam(value = "size", required = false) Integer size,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<User> userOpt = userRepository.findByUsername(username);
+        if (!userOpt.isPresent()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "User not found");
+            return;
+        }
+
+        Path file = profilePictureService.resolveProfilePicture(userOpt.get());
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Profile picture not found");
+            return;
+        }
+
+        if (size != null) {
+            if (!profilePictureService.isSupportedThumbnailSize(size)) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported thumbnail size");
+                return;
+            }
+            file = profilePictureService.getThumbnail(file, size);
+        }
+
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        // Stored pictures are never rewritten in place, so size + mtime identifies the bytes
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        MediaType mediaType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setContentType(mediaType.toString());
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && length > 0 && (ifRange == null || matchesIfRange(ifRange, etag, lastModified))) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+                // Multipart byteranges aren't worth it for images; serve the whole file instead
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        sendFileRegion(request, response, file, start, end - start + 1);
+    }
+
+    // If-Range holds either an entity tag or an HTTP date; anything else means the client's copy is stale
+    private static boolean matchesIfRange(String ifRange, String etag, long lastModified) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            // Last-Modified is sent with second precision
+            return ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond()
+                    == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private void sendFileRegion(HttpServletRequest request, HttpServletResponse response, Path file, long start,
+            long count) throws IOException {
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        // Let Tomcat hand the file straight to the socket with sendfile once the servlet returns
+        if (count >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + count);
+            return;
+        }
+
+        // Small files, or a container without sendfile: plain buffered copy of the requested bytes
+        try (InputStream in = Files.newInputStream(file)) {
+            StreamUtils.copyRange(in, response.getOutputStream(), start, start + count - 1);
+        }
+    }
+}
@@ -2,6 +2,11 @@ package com.example.pensionerverification.controller;
 
 import com.example.pensionerverification.model.User;
 import com.example.pensionerverification.repository.UserRepository;
+import com.example.pensionerverification.service.BulkImportService;
+import com.example.pensionerverification.service.BulkImportService.ImportResult;
+import com.example.pensionerverification.service.DuplicatePictureService;
+import com.example.pensionerverification.service.ReferenceEmbeddingService;
+import com.example.pensionerverification.service.VerificationStatisticsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +17,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -21,11 +30,21 @@ import java.util.UUID;
 public class UserController {
 
     private final UserRepository userRepository;
+    private final BulkImportService bulkImportService;
+    private final VerificationStatisticsService verificationStatisticsService;
+    private final DuplicatePictureService duplicatePictureService;
+    private final ReferenceEmbeddingService referenceEmbeddingService;
     private final Path root = Paths.get("uploads");
 
     @Autowired
-    public UserController(UserRepository userRepository) {
+    public UserController(UserRepository userRepository, BulkImportService bulkImportService,
+            VerificationStatisticsService verificationStatisticsService,
+            DuplicatePictureService duplicatePictureService, ReferenceEmbeddingService referenceEmbeddingService) {
         this.userRepository = userRepository;
+        this.bulkImportService = bulkImportService;
+        this.verificationStatisticsService = verificationStatisticsService;
+        this.duplicatePictureService = duplicatePictureService;
+        this.referenceEmbeddingService = referenceEmbeddingService;
         try {
             Files.createDirectories(root);
         } catch (IOException e) {
@@ -51,14 +70,55 @@ public class UserController {
             Path filePath = this.root.resolve(fileName);
             Files.copy(file.getInputStream(), filePath);
             user.setProfilePicturePath(filePath.toString());
+            duplicatePictureService.checkPicture(user, filePath);
 
             userRepository.save(user);
+            duplicatePictureService.indexPicture(user, null);
+            referenceEmbeddingService.scheduleEmbedding(user);
+            verificationStatisticsService.onUserRegistered();
             return new ResponseEntity<>("User registered successfully!", HttpStatus.OK);
         } catch (Exception e) {
             return new ResponseEntity<>("Registration failed: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @PostMapping("/import")
+    public ResponseEntity<?> importUsers(@RequestParam("users") MultipartFile usersCsv,
+            @RequestParam("photos") MultipartFile photosZip,
+            @RequestParam(value = "importId", required = false) String importId) {
+        Path csvPath = null;
+        Path zipPath = null;
+        try {
+            if (usersCsv.isEmpty() || photosZip.isEmpty()) {
+                return new ResponseEntity<>("Both a users CSV and a photos ZIP are required!", HttpStatus.BAD_REQUEST);
+            }
+
+            // ZipFile needs random access, so spool both parts to disk first
+            csvPath = Files.createTempFile("import-", ".csv");
+            zipPath = Files.createTempFile("import-", ".zip");
+            usersCsv.transferTo(csvPath);
+            photosZip.transferTo(zipPath);
+
+            ImportResult result = bulkImportService.importUsers(csvPath, zipPath, importId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("importId", result.getImportId());
+            response.put("resumedAfterRow", result.getResumedAfterRow());
+            response.put("imported", result.getImported());
+            response.put("skippedExisting", result.getSkippedExisting());
+            response.put("failed", result.getFailed());
+            response.put("elapsedMillis", result.getElapsedMillis());
+            response.put("rowsPerSecond", result.getRowsPerSecond());
+            response.put("errors", result.getErrors());
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (Exception e) {
+            return new ResponseEntity<>("Import failed: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            deleteQuietly(csvPath);
+            deleteQuietly(zipPath);
+        }
+    }
+
     @PostMapping("/login")
     public ResponseEntity<?> loginUser(@RequestBody User loginDetails) {
         Optional<User> userData = userRepository.findByUsername(loginDetails.getUsername());
@@ -91,4 +151,38 @@ public class UserController {
         }
         return new ResponseEntity<>("User not found!", HttpStatus.NOT_FOUND);
     }
+
+    // Review list for fraud checks: users whose profile picture nearly matches another user's
+    @GetMapping("/duplicate-pictures")
+    public ResponseEntity<?> getDuplicatePictures() {
+        List<User> flagged = userRepository.findByDuplicatePictureOfIsNotNull();
+        List<Long> originalIds = new ArrayList<>();
+        for (User user : flagged) {
+            originalIds.add(user.getDuplicatePictureOf());
+        }
+        Map<Long, String> originalUsernames = new HashMap<>();
+        for (User original : userRepository.findAllById(originalIds)) {
+            originalUsernames.put(original.getId(), original.getUsername());
+        }
+
+        List<Map<String, Object>> duplicates = new ArrayList<>();
+        for (User user : flagged) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("username", user.getUsername());
+            entry.put("duplicateOf", originalUsernames.get(user.getDuplicatePictureOf()));
+            duplicates.add(entry);
+        }
+        return new ResponseEntity<>(duplicates, HttpStatus.OK);
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Failed to cleanup temporary file: " + path + " - " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
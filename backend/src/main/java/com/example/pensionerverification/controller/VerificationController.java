@@ -2,15 +2,26 @@ package com.example.pensionerverification.controller;
 
 import com.example.pensionerverification.model.User;
 import com.example.pensionerverification.repository.UserRepository;
+import com.example.pensionerverification.service.DuplicatePictureService;
 import com.example.pensionerverification.service.HuggingFaceService;
 import com.example.pensionerverification.service.HuggingFaceService.LivenessVerificationResult;
+import com.example.pensionerverification.service.ProfilePictureService;
+import com.example.pensionerverification.service.ReferenceEmbeddingService;
+import com.example.pensionerverification.service.VerificationExportService;
+import com.example.pensionerverification.service.VerificationPolicy;
+import com.example.pensionerverification.service.VerificationStatisticsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -26,6 +37,24 @@ public class VerificationController {
     @Autowired
     private HuggingFaceService huggingFaceService;
 
+    @Autowired
+    private VerificationPolicy verificationPolicy;
+
+    @Autowired
+    private VerificationExportService verificationExportService;
+
+    @Autowired
+    private VerificationStatisticsService verificationStatisticsService;
+
+    @Autowired
+    private DuplicatePictureService duplicatePictureService;
+
+    @Autowired
+    private ProfilePictureService profilePictureService;
+
+    @Autowired
+    private ReferenceEmbeddingService referenceEmbeddingService;
+
     @PostMapping("/verify/{username}")
     public ResponseEntity<Map<String, Object>> verifyLiveness(@PathVariable String username,
             @RequestParam("video") MultipartFile videoFile) {
@@ -67,6 +96,7 @@ public class VerificationController {
 
             // Perform HuggingFace liveness verification
             LivenessVerificationResult result = huggingFaceService.verifyLiveness(user, videoFile);
+            java.util.Date previousVerification = user.getLastVerificationDate();
 
             // Create response
             Map<String, Object> response = new HashMap<>();
@@ -83,9 +113,15 @@ public class VerificationController {
                 // Update user's last verification timestamp
                 user.setLastVerificationDate(new java.util.Date());
                 userRepository.save(user);
+                // Only counted once the new date is stored, so the dashboard can't run ahead of the database
+                verificationStatisticsService.onVerificationAttempt(previousVerification, true,
+                        result.isSpoofingSuspected());
 
                 return ResponseEntity.ok(response);
             } else {
+                verificationStatisticsService.onVerificationAttempt(previousVerification, false,
+                        result.isSpoofingSuspected());
+
                 // Include diagnostic information for failed verification
                 response.put("diagnostics", result.getDetails());
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
@@ -134,11 +170,16 @@ public class VerificationController {
             }
 
             // Save the profile picture
+            Long previousHash = user.getProfilePictureHash();
             String profilePicturePath = huggingFaceService.saveProfilePicture(user, imageFile);
+            duplicatePictureService.checkPicture(user, profilePictureService.resolveProfilePicture(profilePicturePath));
+            referenceEmbeddingService.clearEmbedding(user);
 
             // Update user's profile picture path
             user.setProfilePicturePath(profilePicturePath);
             userRepository.save(user);
+            duplicatePictureService.indexPicture(user, previousHash);
+            referenceEmbeddingService.scheduleEmbedding(user);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -171,7 +212,7 @@ public class VerificationController {
             Map<String, Object> status = new HashMap<>();
             status.put("username", username);
             status.put("lastVerificationDate", user.getLastVerificationDate());
-            status.put("verificationRequired", isVerificationRequired(user));
+            status.put("verificationRequired", verificationPolicy.isVerificationRequired(user));
             status.put("hasProfilePicture",
                     user.getProfilePicturePath() != null && !user.getProfilePicturePath().isEmpty());
 
@@ -183,16 +224,42 @@ public class VerificationController {
         }
     }
 
-    private boolean isVerificationRequired(User user) {
-        if (user.getLastVerificationDate() == null) {
-            return true;
+    @GetMapping("/verification-statistics")
+    public ResponseEntity<Map<String, Object>> getVerificationStatistics() {
+        return ResponseEntity.ok(verificationStatisticsService.getSnapshot());
+    }
+
+    @GetMapping("/export/verification-status")
+    public ResponseEntity<StreamingResponseBody> exportVerificationStatus(
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip) {
+        VerificationExportService.Format exportFormat;
+        try {
+            exportFormat = VerificationExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
 
-        // Check if verification is older than 6 months (typical pension renewal period)
-        long sixMonthsInMillis = 6L * 30 * 24 * 60 * 60 * 1000;
-        long timeSinceLastVerification = System.currentTimeMillis() - user.getLastVerificationDate().getTime();
+        String fileName = "verification-status." + exportFormat.name().toLowerCase(Locale.ROOT) + (gzip ? ".gz" : "");
+        MediaType mediaType = gzip ? MediaType.parseMediaType("application/gzip")
+                : exportFormat == VerificationExportService.Format.CSV ? MediaType.parseMediaType("text/csv")
+                : MediaType.parseMediaType("application/x-ndjson");
+
+        // Rows are written as they come off the database cursor, nothing is buffered per request
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+                verificationExportService.export(gzipOut, exportFormat);
+                gzipOut.finish();
+            } else {
+                verificationExportService.export(out, exportFormat);
+            }
+        };
 
-        return timeSinceLastVerification > sixMonthsInMillis;
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
     }
 
     private Map<String, Object> createErrorResponse(String message) {
@@ -1,9 +1,11 @@
 package com.example.pensionerverification.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 import java.util.Date;
 
 @Entity
+@DynamicUpdate // Only write changed columns, so saves don't overwrite embeddings stored in the background
 @Table(name = "users") // Use "users" as "user" is a reserved keyword in PostgreSQL
 public class User {
 
@@ -24,6 +26,18 @@ public class User {
     @Temporal(TemporalType.TIMESTAMP)
     private Date lastVerificationDate;
 
+    // 64-bit dHash of the profile picture, used to spot pictures reused across accounts
+    private Long profilePictureHash;
+
+    // Id of another user whose profile picture this one nearly matches
+    private Long duplicatePictureOf;
+
+    // Face embedding of the profile picture (little-endian float32) and the model that produced it
+    @Column(length = 16384) // Up to 4096 dimensions; without a length H2 would cap it at 255 bytes
+    private byte[] referenceEmbedding;
+
+    private String embeddingModelVersion;
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -64,4 +78,36 @@ public class User {
     public void setLastVerificationDate(Date lastVerificationDate) {
         this.lastVerificationDate = lastVerificationDate;
     }
+
+    public Long getProfilePictureHash() {
+        return profilePictureHash;
+    }
+
+    public void setProfilePictureHash(Long profilePictureHash) {
+        this.profilePictureHash = profilePictureHash;
+    }
+
+    public Long getDuplicatePictureOf() {
+        return duplicatePictureOf;
+    }
+
+    public void setDuplicatePictureOf(Long duplicatePictureOf) {
+        this.duplicatePictureOf = duplicatePictureOf;
+    }
+
+    public byte[] getReferenceEmbedding() {
+        return referenceEmbedding;
+    }
+
+    public void setReferenceEmbedding(byte[] referenceEmbedding) {
+        this.referenceEmbedding = referenceEmbedding;
+    }
+
+    public String getEmbeddingModelVersion() {
+        return embeddingModelVersion;
+    }
+
+    public void setEmbeddingModelVersion(String embeddingModelVersion) {
+        this.embeddingModelVersion = embeddingModelVersion;
+    }
 }
\ No newline at end of file
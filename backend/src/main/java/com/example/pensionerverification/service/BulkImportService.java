@@ -0,0 +1,406 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Imports pensioners in bulk from a CSV file (username,password,photo) and a ZIP
+ * archive holding the referenced photos.
+ *
+ * Rows are processed in batches: one query checks username collisions for the
+ * whole batch, photos are extracted in parallel on a bounded pool and users are
+ * written with a single JDBC batch insert. After each committed batch the last
+ * processed CSV row is checkpointed, so re-running an import with the same id
+ * resumes where the previous run stopped.
+ */
+@Service
+public class BulkImportService {
+
+    private static final String INSERT_USER_SQL = "INSERT INTO users (username, password, profile_picture_path) VALUES (?, ?, ?)";
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    @Value("${upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${temp.dir:temp-videos}")
+    private String tempDir;
+
+    @Value("${pensioner.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${pensioner.import.photo-threads:4}")
+    private int photoThreads;
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final VerificationStatisticsService verificationStatisticsService;
+
+    public BulkImportService(UserRepository userRepository, JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate, VerificationStatisticsService verificationStatisticsService) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.verificationStatisticsService = verificationStatisticsService;
+    }
+
+    public static class ImportResult {
+        private final String importId;
+        private final long resumedAfterRow;
+        private long imported;
+        private long skippedExisting;
+        private long failed;
+        private long elapsedMillis;
+        private final List<String> errors = new ArrayList<>();
+
+        ImportResult(String importId, long resumedAfterRow) {
+            this.importId = importId;
+            this.resumedAfterRow = resumedAfterRow;
+        }
+
+        private void fail(long rowNumber, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Row " + rowNumber + ": " + message);
+            }
+        }
+
+        public String getImportId() {
+            return importId;
+        }
+
+        public long getResumedAfterRow() {
+            return resumedAfterRow;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getSkippedExisting() {
+            return skippedExisting;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getRowsPerSecond() {
+            long processed = imported + skippedExisting + failed;
+            return elapsedMillis == 0 ? processed : processed * 1000.0 / elapsedMillis;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    private static class ImportRow {
+        private final long rowNumber;
+        private final String username;
+        private final String password;
+        private final String photo;
+        private String storedFileName;
+
+        ImportRow(long rowNumber, String username, String password, String photo) {
+            this.rowNumber = rowNumber;
+            this.username = username;
+            this.password = password;
+            this.photo = photo;
+        }
+
+        static ImportRow parse(long rowNumber, String line) {
+            List<String> columns = parseCsvLine(line);
+            if (columns == null || columns.size() < 3) {
+                return null;
+            }
+            // Passwords are taken verbatim; surrounding spaces may be part of them
+            String username = columns.get(0).trim();
+            String password = columns.get(1);
+            String photo = columns.get(2).trim();
+            if (username.isEmpty() || password.isEmpty() || photo.isEmpty()) {
+                return null;
+            }
+            return new ImportRow(rowNumber, username, password, photo);
+        }
+    }
+
+    /**
+     * Splits one CSV record (RFC 4180): fields may be quoted, quoted fields may
+     * contain commas and doubled quotes. Records spanning lines aren't supported.
+     *
+     * @return the fields, or null if the line is malformed
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            if (i < line.length() && line.charAt(i) == '"') {
+                // Quoted field: runs to the next quote that isn't doubled
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        return null;
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    return null;
+                }
+            } else {
+                while (i < line.length() && line.charAt(i) != ',') {
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        return null;
+                    }
+                    field.append(c);
+                }
+            }
+
+            fields.add(field.toString());
+            field.setLength(0);
+            if (i >= line.length()) {
+                return fields;
+            }
+            i++; // Skip the comma
+        }
+    }
+
+    public ImportResult importUsers(Path csvFile, Path photosZip, String importId) throws IOException {
+        if (importId == null || importId.isBlank()) {
+            importId = deriveImportId(csvFile);
+        }
+        if (!importId.matches("[A-Za-z0-9_-]+")) {
+            throw new IOException("Invalid import id: " + importId);
+        }
+
+        Files.createDirectories(Paths.get(uploadDir));
+        Path checkpointFile = Paths.get(tempDir, "imports", importId + ".checkpoint");
+        Files.createDirectories(checkpointFile.getParent());
+
+        long resumeAfter = readCheckpoint(checkpointFile);
+        ImportResult result = new ImportResult(importId, resumeAfter);
+        long start = System.nanoTime();
+
+        // Bounded pool: at most one batch of photo writes is ever queued
+        ExecutorService photoPool = new ThreadPoolExecutor(photoThreads, photoThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(batchSize), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try (ZipFile zip = new ZipFile(photosZip.toFile());
+                BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            // Skip header
+            String line = reader.readLine();
+            long rowNumber = 0;
+            List<ImportRow> batch = new ArrayList<>(batchSize);
+
+            while ((line = reader.readLine()) != null) {
+                rowNumber++;
+                if (rowNumber <= resumeAfter || line.isBlank()) {
+                    continue;
+                }
+
+                ImportRow row = ImportRow.parse(rowNumber, line);
+                if (row == null) {
+                    result.fail(rowNumber, "Malformed row, expected username,password,photo");
+                    continue;
+                }
+
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    processBatch(batch, zip, photoPool, result);
+                    writeCheckpoint(checkpointFile, rowNumber);
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                processBatch(batch, zip, photoPool, result);
+            }
+        } finally {
+            photoPool.shutdown();
+        }
+
+        // Import finished, nothing left to resume
+        Files.deleteIfExists(checkpointFile);
+
+        result.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return result;
+    }
+
+    private void processBatch(List<ImportRow> batch, ZipFile zip, ExecutorService photoPool, ImportResult result)
+            throws IOException {
+        Set<String> usernames = new HashSet<>();
+        for (ImportRow row : batch) {
+            usernames.add(row.username);
+        }
+        Set<String> taken = new HashSet<>(userRepository.findExistingUsernames(usernames));
+
+        List<ImportRow> accepted = new ArrayList<>();
+        List<Future<String>> photoWrites = new ArrayList<>();
+        for (ImportRow row : batch) {
+            // taken.add also catches duplicates within the same CSV
+            if (!taken.add(row.username)) {
+                result.skippedExisting++;
+                continue;
+            }
+
+            ZipEntry entry = zip.getEntry(row.photo);
+            if (entry == null || entry.isDirectory()) {
+                result.fail(row.rowNumber, "Photo not found in archive: " + row.photo);
+                continue;
+            }
+
+            accepted.add(row);
+            photoWrites.add(photoPool.submit(() -> storePhoto(zip, entry)));
+        }
+
+        List<ImportRow> inserts = new ArrayList<>(accepted.size());
+        boolean committed = false;
+        try {
+            for (int i = 0; i < accepted.size(); i++) {
+                ImportRow row = accepted.get(i);
+                try {
+                    row.storedFileName = photoWrites.get(i).get();
+                    inserts.add(row);
+                } catch (ExecutionException e) {
+                    result.fail(row.rowNumber, "Failed to store photo: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Import interrupted", e);
+                }
+            }
+
+            if (!inserts.isEmpty()) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_USER_SQL,
+                            inserts, inserts.size(), (ps, row) -> {
+                                ps.setString(1, row.username);
+                                ps.setString(2, row.password); // In production, hash the password
+                                ps.setString(3, row.storedFileName);
+                            }));
+                } catch (RuntimeException e) {
+                    throw new IOException("Failed to insert batch ending at row "
+                            + inserts.get(inserts.size() - 1).rowNumber + ": " + e.getMessage(), e);
+                }
+            }
+            committed = true;
+        } finally {
+            if (!committed) {
+                // Batch rolled back or abandoned, don't leave orphaned photos behind
+                discardPhotos(photoWrites);
+            }
+        }
+
+        if (inserts.isEmpty()) {
+            return;
+        }
+        result.imported += inserts.size();
+        verificationStatisticsService.onUsersImported(inserts.size());
+    }
+
+    private String storePhoto(ZipFile zip, ZipEntry entry) throws IOException {
+        // Only keep the base name so archive paths can't escape the upload directory
+        String baseName = Paths.get(entry.getName()).getFileName().toString();
+        String fileName = UUID.randomUUID().toString() + "_" + baseName;
+        Path target = Paths.get(uploadDir, fileName);
+        try (InputStream in = zip.getInputStream(entry)) {
+            Files.copy(in, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        return fileName;
+    }
+
+    // Waits for every photo write of the batch, even after an interrupt, so none is written after the cleanup
+    private void discardPhotos(List<Future<String>> photoWrites) {
+        boolean interrupted = false;
+        for (Future<String> write : photoWrites) {
+            String fileName = null;
+            while (true) {
+                try {
+                    fileName = write.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+            if (fileName != null) {
+                try {
+                    Files.deleteIfExists(Paths.get(uploadDir, fileName));
+                } catch (IOException e) {
+                    System.err.println("Failed to delete imported photo " + fileName + ": " + e.getMessage());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String deriveImportId(Path csvFile) throws IOException {
+        try (InputStream in = Files.newInputStream(csvFile)) {
+            return DigestUtils.md5DigestAsHex(in);
+        }
+    }
+
+    private long readCheckpoint(Path checkpointFile) throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(checkpointFile).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(Path checkpointFile, long rowNumber) throws IOException {
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.writeString(tmp, Long.toString(rowNumber));
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
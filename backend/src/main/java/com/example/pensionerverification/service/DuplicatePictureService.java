@@ -0,0 +1,365 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.model.User;
+import com.example.pensionerverification.service.PictureHashIndex.Match;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flags pensioners whose profile picture is a near copy of another pensioner's.
+ *
+ * Every picture gets a 64-bit difference hash (dHash), which survives
+ * re-encoding, resizing and small edits. Hashes are stored on the user row and
+ * kept in a {@link PictureHashIndex} so a new picture is checked against all
+ * stored ones without touching any image files. Pictures that arrive without a
+ * hash (bulk imports, rows from before this existed, uploads made while the
+ * index is still loading) are hashed and checked by a background backfill,
+ * which only writes a hash if the row still holds the picture it hashed. A
+ * failed load is retried on the next scheduled run.
+ */
+@Service
+public class DuplicatePictureService {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    private static final int BACKFILL_PAGE_SIZE = 500;
+
+    @Value("${pensioner.duplicate-detection.enabled:true}")
+    private boolean enabled;
+
+    // Bits that may differ between two hashes of the same photo (0-15)
+    @Value("${pensioner.duplicate-detection.max-distance:6}")
+    private int maxDistance;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ProfilePictureService profilePictureService;
+    private final PictureHashIndex index = new PictureHashIndex();
+
+    // Loading and backfills run here, off the scheduler thread; at most one at a time
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "picture-hash-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean backfillRunning = new AtomicBoolean();
+
+    private volatile boolean loaded;
+    private volatile long loadMillis;
+    private volatile String loadError;
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private final AtomicLong flagged = new AtomicLong();
+
+    public DuplicatePictureService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+            ProfilePictureService profilePictureService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.profilePictureService = profilePictureService;
+    }
+
+    /**
+     * Hashes the user's new picture and marks the user as a suspected duplicate
+     * if another pensioner has a close match. Call before saving the user, then
+     * {@link #indexPicture} once the user has an id. Until the index is loaded
+     * the picture is left unhashed, so the backfill that follows the load checks
+     * it against every stored picture.
+     */
+    public void checkPicture(User user, Path picture) {
+        user.setProfilePictureHash(null);
+        user.setDuplicatePictureOf(null);
+        if (!enabled || !loaded || picture == null) {
+            return;
+        }
+
+        Long hash = computeHash(picture);
+        if (hash == null) {
+            return;
+        }
+        user.setProfilePictureHash(hash);
+
+        List<Match> matches = findNearDuplicates(hash, user.getId());
+        if (!matches.isEmpty()) {
+            Match closest = matches.get(0);
+            user.setDuplicatePictureOf(closest.getUserId());
+            flagged.incrementAndGet();
+            System.err.println("Profile picture of " + user.getUsername() + " is within " + closest.getDistance()
+                    + " bits of user " + closest.getUserId() + " (" + matches.size() + " close matches)");
+        }
+    }
+
+    /**
+     * @param previousHash hash of the picture the user had before, if any
+     */
+    public void indexPicture(User user, Long previousHash) {
+        if (previousHash != null) {
+            index.remove(user.getId(), previousHash);
+        }
+        if (user.getProfilePictureHash() != null) {
+            index.add(user.getId(), user.getProfilePictureHash());
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        long count = searches.get();
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("loaded", loaded);
+        snapshot.put("loadMillis", loadMillis);
+        snapshot.put("loadError", loadError);
+        snapshot.put("indexedPictures", index.size());
+        snapshot.put("searches", count);
+        snapshot.put("avgSearchMicros", count == 0 ? 0.0 : searchNanos.get() / 1000.0 / count);
+        snapshot.put("flagged", flagged.get());
+        return snapshot;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduledBackfill();
+    }
+
+    @Scheduled(fixedDelayString = "${pensioner.duplicate-detection.backfill-interval-ms:300000}")
+    public void scheduledBackfill() {
+        // Skipped while the load or a previous backfill is still going
+        if (!enabled || !backfillRunning.compareAndSet(false, true)) {
+            return;
+        }
+        backfillExecutor.execute(() -> {
+            try {
+                loadAndBackfill();
+            } finally {
+                backfillRunning.set(false);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+
+    // Loads the index first if no load has succeeded yet
+    void loadAndBackfill() {
+        if (!loaded) {
+            try {
+                loadIndex();
+            } catch (Exception e) {
+                loadError = e.getMessage();
+                System.err.println("Failed to load profile picture hashes: " + e.getMessage());
+                return;
+            }
+            loadError = null;
+            loaded = true;
+        }
+
+        try {
+            backfill();
+        } catch (Exception e) {
+            System.err.println("Profile picture hash backfill failed: " + e.getMessage());
+        }
+    }
+
+    private void loadIndex() {
+        long start = System.currentTimeMillis();
+        // Drops whatever a failed earlier attempt got through
+        index.clear();
+        // PostgreSQL only streams with a cursor inside a transaction
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT id, profile_picture_hash FROM users WHERE profile_picture_hash IS NOT NULL");
+            ps.setFetchSize(10_000);
+            return ps;
+        }, (RowCallbackHandler) rs -> index.add(rs.getLong(1), rs.getLong(2))));
+        loadMillis = System.currentTimeMillis() - start;
+        System.out.println("Loaded " + index.size() + " profile picture hashes in " + loadMillis + " ms");
+    }
+
+    private void backfill() {
+        long lastId = 0;
+        while (true) {
+            List<Map<String, Object>> page = jdbcTemplate.queryForList(
+                    "SELECT id, username, profile_picture_path FROM users WHERE profile_picture_hash IS NULL "
+                            + "AND profile_picture_path IS NOT NULL AND id > ? ORDER BY id LIMIT ?",
+                    lastId, BACKFILL_PAGE_SIZE);
+            if (page.isEmpty()) {
+                return;
+            }
+
+            List<BackfilledPicture> pictures = new ArrayList<>();
+            for (Map<String, Object> row : page) {
+                lastId = ((Number) row.get("id")).longValue();
+                String storedPath = (String) row.get("profile_picture_path");
+                Path picture = profilePictureService.resolveProfilePicture(storedPath);
+                Long hash = picture == null ? null : computeHash(picture);
+                if (hash == null) {
+                    // Left unhashed; retried on the next run
+                    continue;
+                }
+                pictures.add(new BackfilledPicture(lastId, (String) row.get("username"), storedPath, hash,
+                        closestMatch(hash, lastId, pictures)));
+            }
+            if (pictures.isEmpty()) {
+                continue;
+            }
+
+            // A user who saved a new picture meanwhile already has its hash; keep that one
+            List<Object[]> updates = new ArrayList<>();
+            for (BackfilledPicture picture : pictures) {
+                updates.add(new Object[] { picture.hash,
+                        picture.closest == null ? null : picture.closest.getUserId(), picture.userId,
+                        picture.storedPath });
+            }
+            int[] counts = jdbcTemplate.batchUpdate("UPDATE users SET profile_picture_hash = ?, "
+                    + "duplicate_picture_of = ? WHERE id = ? AND profile_picture_hash IS NULL "
+                    + "AND profile_picture_path = ?", updates);
+
+            for (int i = 0; i < pictures.size(); i++) {
+                if (counts[i] != 1) {
+                    continue;
+                }
+                BackfilledPicture picture = pictures.get(i);
+                index.add(picture.userId, picture.hash);
+                if (picture.closest != null) {
+                    flagged.incrementAndGet();
+                    System.err.println("Profile picture of " + picture.username + " is within "
+                            + picture.closest.getDistance() + " bits of user " + picture.closest.getUserId());
+                }
+            }
+        }
+    }
+
+    // Also compares against pictures earlier in the page, which aren't indexed until their update lands
+    private Match closestMatch(long hash, long userId, List<BackfilledPicture> pagePictures) {
+        List<Match> matches = findNearDuplicates(hash, userId);
+        Match closest = matches.isEmpty() ? null : matches.get(0);
+        for (BackfilledPicture other : pagePictures) {
+            int distance = Long.bitCount(other.hash ^ hash);
+            if (distance <= searchDistance() && (closest == null || distance < closest.getDistance())) {
+                closest = new Match(other.userId, distance);
+            }
+        }
+        return closest;
+    }
+
+    private List<Match> findNearDuplicates(long hash, Long excludeUserId) {
+        long start = System.nanoTime();
+        List<Match> matches = index.search(hash, searchDistance());
+        searchNanos.addAndGet(System.nanoTime() - start);
+        searches.incrementAndGet();
+        if (excludeUserId != null) {
+            matches.removeIf(match -> match.getUserId() == excludeUserId);
+        }
+        return matches;
+    }
+
+    private int searchDistance() {
+        return Math.max(0, Math.min(maxDistance, 15));
+    }
+
+    /**
+     * @return the picture's dHash, or null if it can't be decoded
+     */
+    Long computeHash(Path picture) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(picture.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // A few pixels per hash cell are enough, so skip most of a large photo while decoding
+                int step = Math.max(1, Math.min(reader.getWidth(0) / (HASH_WIDTH * 8),
+                        reader.getHeight(0) / (HASH_HEIGHT * 8)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return differenceHash(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to hash profile picture " + picture + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Averages luminance over a 9x8 grid, then sets one bit per cell brighter than its left neighbour
+    private long differenceHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[HASH_WIDTH * HASH_HEIGHT];
+        int[] counts = new int[HASH_WIDTH * HASH_HEIGHT];
+
+        for (int y = 0; y < height; y++) {
+            int row = y * HASH_HEIGHT / height;
+            for (int x = 0; x < width; x++) {
+                int cell = row * HASH_WIDTH + x * HASH_WIDTH / width;
+                int rgb = image.getRGB(x, y);
+                sums[cell] += (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < HASH_HEIGHT; row++) {
+            for (int col = 0; col < HASH_WIDTH - 1; col++) {
+                int left = row * HASH_WIDTH + col;
+                hash <<= 1;
+                if (average(sums, counts, left + 1) > average(sums, counts, left)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private double average(long[] sums, int[] counts, int cell) {
+        return counts[cell] == 0 ? 0 : (double) sums[cell] / counts[cell];
+    }
+
+    private static final class BackfilledPicture {
+        private final long userId;
+        private final String username;
+        private final String storedPath;
+        private final long hash;
+        private final Match closest;
+
+        BackfilledPicture(long userId, String username, String storedPath, long hash, Match closest) {
+            this.userId = userId;
+            this.username = username;
+            this.storedPath = storedPath;
+            this.hash = hash;
+            this.closest = closest;
+        }
+    }
+}
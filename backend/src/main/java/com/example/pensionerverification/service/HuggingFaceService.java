@@ -3,12 +3,15 @@ package com.example.pensionerverification.service;
 import com.example.pensionerverification.model.User;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -17,7 +20,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -36,24 +43,56 @@ public class HuggingFaceService {
     @Value("${temp.dir:temp-videos}")
     private String tempDir;
 
-    private final RestTemplate restTemplate;
+    @Value("${pensioner.verification.confidence-threshold:0.7}")
+    private double confidenceThreshold;
+
+    @Value("${pensioner.verification.progressive.enabled:true}")
+    private boolean progressiveEnabled;
+
+    // Share of the clip sent in the first pass
+    @Value("${pensioner.verification.progressive.sample-fraction:0.4}")
+    private double sampleFraction;
+
+    // How far from the threshold a first-pass confidence must be to skip the full pass
+    @Value("${pensioner.verification.progressive.margin:0.15}")
+    private double decisionMargin;
+
+    @Autowired
+    private VideoPrefixSampler videoPrefixSampler;
+
+    @Autowired
+    private UpstreamMetrics upstreamMetrics;
+
+    @Autowired
+    private ReferenceEmbeddingService referenceEmbeddingService;
+
+    @Autowired
+    @Qualifier("upstreamPredictRestTemplate")
+    private RestTemplate restTemplate;
+
     private final ObjectMapper objectMapper;
 
     public HuggingFaceService() {
-        this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
     }
 
     public static class LivenessVerificationResult {
         private boolean verified;
         private double confidence;
+        private boolean confidenceReported;
         private String reason;
         private Map<String, Object> details;
 
         public LivenessVerificationResult(boolean verified, double confidence, String reason,
                 Map<String, Object> details) {
+            this(verified, confidence, true, reason, details);
+        }
+
+        public LivenessVerificationResult(boolean verified, double confidence, boolean confidenceReported,
+                String reason, Map<String, Object> details) {
             this.verified = verified;
             this.confidence = confidence;
+            this.confidenceReported = confidenceReported;
             this.reason = reason;
             this.details = details;
         }
@@ -66,6 +105,11 @@ public class HuggingFaceService {
             return confidence;
         }
 
+        /** False when the upstream answer had no usable confidence and {@link #getConfidence} is just 0. */
+        public boolean isConfidenceReported() {
+            return confidenceReported;
+        }
+
         public String getReason() {
             return reason;
         }
@@ -73,6 +117,27 @@ public class HuggingFaceService {
         public Map<String, Object> getDetails() {
             return details;
         }
+
+        public boolean isSpoofingSuspected() {
+            return details != null && String.valueOf(details.get("fullResult")).contains("SPOOFING SUSPECTED");
+        }
+    }
+
+    // The reference side of a verification: the stored embedding when there is a current one, else the picture
+    private static class Reference {
+        private final String picturePath;
+        private byte[] embedding;
+        private final String embeddingModelVersion;
+
+        Reference(String picturePath, byte[] embedding, String embeddingModelVersion) {
+            this.picturePath = picturePath;
+            this.embedding = embedding;
+            this.embeddingModelVersion = embeddingModelVersion;
+        }
+
+        long bytes() throws IOException {
+            return embedding != null ? embedding.length : Files.size(Paths.get(picturePath));
+        }
     }
 
     public LivenessVerificationResult verifyLiveness(User user, MultipartFile videoFile) throws IOException {
@@ -85,9 +150,13 @@ public class HuggingFaceService {
 
             // Get profile picture path
             String profilePicturePath = getFullProfilePicturePath(user);
+            Reference reference = new Reference(profilePicturePath,
+                    referenceEmbeddingService.getCurrentEmbedding(user), user.getEmbeddingModelVersion());
 
             // Call HuggingFace API using the gradio_client pattern
-            LivenessVerificationResult result = callHuggingFaceAPI(profilePicturePath, videoPath);
+            LivenessVerificationResult result = progressiveEnabled
+                    ? verifyProgressively(reference, videoPath)
+                    : timedCall(UpstreamMetrics.PASS_FULL, reference, videoPath, new ArrayList<>());
 
             // Clean up temporary video file
             cleanupTemporaryFile(videoPath);
@@ -99,6 +168,100 @@ public class HuggingFaceService {
         }
     }
 
+    /**
+     * Sends a prefix of the clip first and only escalates to the full video when
+     * the first answer is too close to the confidence threshold to trust.
+     */
+    private LivenessVerificationResult verifyProgressively(Reference reference, String videoPath)
+            throws IOException {
+        List<Map<String, Object>> passes = new ArrayList<>();
+
+        Path samplePath = null;
+        try {
+            samplePath = videoPrefixSampler.writePrefixSample(Paths.get(videoPath), sampleFraction);
+        } catch (IOException e) {
+            System.err.println("Could not cut a sample from the clip, sending it whole: " + e.getMessage());
+        }
+        if (samplePath != null) {
+            LivenessVerificationResult sampleResult = null;
+            try {
+                sampleResult = timedCall(UpstreamMetrics.PASS_SAMPLE, reference, samplePath.toString(),
+                        passes);
+            } catch (IOException e) {
+                // A sample the upstream can't handle just means we fall through to the full clip
+                System.err.println("Sample verification pass failed, escalating: " + e.getMessage());
+            } finally {
+                cleanupTemporaryFile(samplePath.toString());
+            }
+
+            // Without a reported confidence the sample says nothing about how sure the upstream was
+            if (sampleResult != null && sampleResult.isConfidenceReported()) {
+                double confidence = sampleResult.getConfidence();
+                if (sampleResult.isVerified() && confidence >= confidenceThreshold + decisionMargin) {
+                    return withPasses(sampleResult, "accepted-on-sample", passes);
+                }
+                if (!sampleResult.isVerified() && confidence <= confidenceThreshold - decisionMargin) {
+                    return withPasses(sampleResult, "rejected-on-sample", passes);
+                }
+            }
+        }
+
+        LivenessVerificationResult fullResult = timedCall(UpstreamMetrics.PASS_FULL, reference, videoPath,
+                passes);
+        return withPasses(fullResult, samplePath != null ? "escalated" : "full-only", passes);
+    }
+
+    private LivenessVerificationResult timedCall(String pass, Reference reference, String videoPath,
+            List<Map<String, Object>> passes) throws IOException {
+        if (reference.embedding != null) {
+            try {
+                return timedCallOnce(pass, reference, videoPath, passes);
+            } catch (IOException e) {
+                // A 4xx may mean the upstream rejected the embedding; server errors and timeouts aren't retried
+                if (!(e.getCause() instanceof HttpClientErrorException)) {
+                    throw e;
+                }
+                System.err.println("Upstream rejected the reference embedding, sending picture: " + e.getMessage());
+                referenceEmbeddingService.onEmbeddingRejected();
+                reference.embedding = null;
+            }
+        }
+        return timedCallOnce(pass, reference, videoPath, passes);
+    }
+
+    private LivenessVerificationResult timedCallOnce(String pass, Reference reference, String videoPath,
+            List<Map<String, Object>> passes) throws IOException {
+        String referenceSent = reference.embedding != null ? "embedding" : "picture";
+        long bytes = reference.bytes() + Files.size(Paths.get(videoPath));
+        long start = System.nanoTime();
+        LivenessVerificationResult result = callHuggingFaceAPI(reference, videoPath);
+        long elapsed = System.nanoTime() - start;
+        upstreamMetrics.recordCall(pass, bytes, elapsed);
+        if (reference.embedding != null) {
+            referenceEmbeddingService.onEmbeddingUsed();
+        }
+
+        Map<String, Object> passInfo = new LinkedHashMap<>();
+        passInfo.put("pass", pass);
+        passInfo.put("referenceSent", referenceSent);
+        passInfo.put("bytesSent", bytes);
+        passInfo.put("latencyMs", elapsed / 1_000_000);
+        passInfo.put("verified", result.isVerified());
+        passInfo.put("confidence", result.getConfidence());
+        passes.add(passInfo);
+        return result;
+    }
+
+    private LivenessVerificationResult withPasses(LivenessVerificationResult result, String decision,
+            List<Map<String, Object>> passes) {
+        upstreamMetrics.recordDecision(decision);
+        Map<String, Object> details = result.getDetails() != null ? result.getDetails() : new HashMap<>();
+        details.put("progressiveDecision", decision);
+        details.put("upstreamPasses", passes);
+        return new LivenessVerificationResult(result.isVerified(), result.getConfidence(),
+                result.isConfidenceReported(), result.getReason(), details);
+    }
+
     // private LivenessVerificationResult callHuggingFaceAPI(String
     // profileImagePath, String videoPath) throws IOException {
     // try {
@@ -138,7 +301,7 @@ public class HuggingFaceService {
     // return callHuggingFaceAPIAlternative(profileImagePath, videoPath);
     // }
     // }
-    private LivenessVerificationResult callHuggingFaceAPI(String profileImagePath, String videoPath)
+    private LivenessVerificationResult callHuggingFaceAPI(Reference reference, String videoPath)
             throws IOException {
         try {
             // Prepare the API request
@@ -152,8 +315,14 @@ public class HuggingFaceService {
 
             MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
 
-            // Add profile image - direct file upload
-            body.add("profile_image", new FileSystemResource(profileImagePath));
+            if (reference.embedding != null) {
+                // Precomputed reference embedding, so the upstream skips detecting and embedding the picture
+                body.add("profile_embedding", Base64.getEncoder().encodeToString(reference.embedding));
+                body.add("embedding_model_version", reference.embeddingModelVersion);
+            } else {
+                // Add profile image - direct file upload
+                body.add("profile_image", new FileSystemResource(reference.picturePath));
+            }
 
             // Add video file in the expected format
             body.add("video_file", new FileSystemResource(videoPath));
@@ -166,13 +335,33 @@ public class HuggingFaceService {
             ResponseEntity<String> response = restTemplate.postForEntity(apiEndpoint, requestEntity, String.class);
 
             // Parse response
-            return parseHuggingFaceResponse(response.getBody());
+            LivenessVerificationResult result = parseHuggingFaceResponse(response.getBody());
+            Map<String, Object> details = result.getDetails();
+            // Only the embedding model's version; model_version describes the liveness model
+            if (details != null && details.get("embedding_model_version") != null) {
+                referenceEmbeddingService.onModelVersion(String.valueOf(details.get("embedding_model_version")));
+            }
+            return result;
 
         } catch (Exception e) {
             throw new IOException("Failed to call HuggingFace API: " + e.getMessage(), e);
         }
     }
 
+    /** Full /predict round trip with known files, used to load the model upstream before real traffic. */
+    public LivenessVerificationResult runSyntheticPrediction(Path profileImage, Path video) throws IOException {
+        return callHuggingFaceAPI(new Reference(profileImage.toString(), null, null), video.toString());
+    }
+
+    /** Runs the response parser on a canned answer so it is JIT-compiled before the first pensioner arrives. */
+    public void warmUpResponseParser(int iterations) throws IOException {
+        String sample = "[\"✅ VERIFIED - GENUINE PERSON\\n\\nConfidence: 0.93\", "
+                + "{\"is_live\": true, \"confidence\": 0.93, \"blinks\": 2, \"details\": {\"confidence\": 0.93}}]";
+        for (int i = 0; i < iterations; i++) {
+            parseHuggingFaceResponse(sample);
+        }
+    }
+
     // private LivenessVerificationResult callHuggingFaceAPIAlternative(String
     // profileImagePath, String videoPath)
     // throws IOException {
@@ -271,7 +460,7 @@ public class HuggingFaceService {
 
             // Initialize default values
             boolean isVerified = false;
-            double confidence = 0.0;
+            Double confidence = null;
             String reason = "Verification completed";
             Map<String, Object> details = new HashMap<>();
 
@@ -287,7 +476,7 @@ public class HuggingFaceService {
                 // Extract details from JSON
                 if (jsonDetails != null && !jsonDetails.isNull()) {
                     details = parseJsonDetails(jsonDetails);
-                    confidence = extractConfidenceFromDetails(jsonDetails);
+                    confidence = findConfidence(jsonDetails);
                 }
 
                 // Add the full markdown result to details
@@ -299,40 +488,43 @@ public class HuggingFaceService {
                 reason = "Unexpected response format";
             }
 
-            return new LivenessVerificationResult(isVerified, confidence, reason, details);
+            return new LivenessVerificationResult(isVerified, confidence != null ? confidence : 0.0,
+                    confidence != null, reason, details);
 
         } catch (Exception e) {
             throw new IOException("Failed to parse HuggingFace response: " + e.getMessage(), e);
         }
     }
 
-    private double extractConfidenceFromDetails(JsonNode jsonDetails) {
+    /**
+     * @return the confidence from the liveness details, or null if it is missing or not a number
+     */
+    private Double findConfidence(JsonNode jsonDetails) {
         if (jsonDetails == null)
-            return 0.0;
+            return null;
 
-        try {
-            // Look for confidence in the liveness result structure
-            if (jsonDetails.has("confidence")) {
-                return jsonDetails.get("confidence").asDouble();
-            }
-
-            // If it's the full liveness result object
-            if (jsonDetails.has("is_live") && jsonDetails.has("confidence")) {
-                return jsonDetails.get("confidence").asDouble();
-            }
+        // Look for confidence in the liveness result structure, then in nested details
+        JsonNode value = jsonDetails.get("confidence");
+        if (value == null && jsonDetails.has("details")) {
+            value = jsonDetails.get("details").get("confidence");
+        }
+        if (value == null) {
+            return null;
+        }
 
-            // Look in nested details
-            if (jsonDetails.has("details")) {
-                JsonNode details = jsonDetails.get("details");
-                if (details.has("confidence")) {
-                    return details.get("confidence").asDouble();
-                }
+        double confidence;
+        if (value.isNumber()) {
+            confidence = value.asDouble();
+        } else if (value.isTextual()) {
+            try {
+                confidence = Double.parseDouble(value.asText().trim());
+            } catch (NumberFormatException e) {
+                return null;
             }
-
-            return 0.0;
-        } catch (Exception e) {
-            return 0.0;
+        } else {
+            return null;
         }
+        return Double.isFinite(confidence) ? confidence : null;
     }
 
     // private boolean parseVerificationStatus(String markdownResult) {
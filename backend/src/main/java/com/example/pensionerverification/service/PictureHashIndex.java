@@ -0,0 +1,195 @@
+package com.example.pensionerverification.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory multi-index hash over 64-bit perceptual hashes.
+ *
+ * Each hash is split into four 16-bit chunks and every chunk has its own table
+ * of buckets. Two hashes within Hamming distance d agree within d/4 bits on at
+ * least one chunk (pigeonhole), so a query only probes the buckets of chunk
+ * values close to its own instead of comparing against every stored hash.
+ */
+class PictureHashIndex {
+
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+    private static final long REMOVED = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Entries; ids[i] == REMOVED marks a replaced picture
+    private long[] hashes = new long[1024];
+    private long[] ids = new long[1024];
+    private int size;
+    private int live;
+
+    // buckets[chunk][value] holds entry indices, bucketSizes[chunk][value] how many are used
+    private final int[][][] buckets = new int[CHUNKS][BUCKETS][];
+    private final int[][] bucketSizes = new int[CHUNKS][BUCKETS];
+
+    static final class Match {
+        private final long userId;
+        private final int distance;
+
+        Match(long userId, int distance) {
+            this.userId = userId;
+            this.distance = distance;
+        }
+
+        long getUserId() {
+            return userId;
+        }
+
+        int getDistance() {
+            return distance;
+        }
+    }
+
+    void add(long userId, long hash) {
+        lock.writeLock().lock();
+        try {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int entry = size++;
+            hashes[entry] = hash;
+            ids[entry] = userId;
+            live++;
+
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int value = chunk(hash, chunk);
+                int[] bucket = buckets[chunk][value];
+                int used = bucketSizes[chunk][value];
+                if (bucket == null) {
+                    bucket = new int[2];
+                } else if (used == bucket.length) {
+                    bucket = Arrays.copyOf(bucket, used * 2);
+                }
+                bucket[used] = entry;
+                buckets[chunk][value] = bucket;
+                bucketSizes[chunk][value] = used + 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(long userId, long hash) {
+        lock.writeLock().lock();
+        try {
+            int value = chunk(hash, 0);
+            int[] bucket = buckets[0][value];
+            for (int i = 0; i < bucketSizes[0][value]; i++) {
+                int entry = bucket[i];
+                if (ids[entry] == userId && hashes[entry] == hash) {
+                    ids[entry] = REMOVED;
+                    live--;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return users whose hash is within maxDistance bits, closest first
+     */
+    List<Match> search(long hash, int maxDistance) {
+        int chunkRadius = maxDistance / CHUNKS;
+        int[] queryChunks = new int[CHUNKS];
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            queryChunks[chunk] = chunk(hash, chunk);
+        }
+
+        Map<Long, Integer> found = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                for (int value : neighbours(queryChunks[chunk], chunkRadius)) {
+                    int[] bucket = buckets[chunk][value];
+                    for (int i = 0; i < bucketSizes[chunk][value]; i++) {
+                        int entry = bucket[i];
+                        long userId = ids[entry];
+                        if (userId == REMOVED || foundInEarlierChunk(hashes[entry], queryChunks, chunk, chunkRadius)) {
+                            continue;
+                        }
+                        int distance = Long.bitCount(hashes[entry] ^ hash);
+                        if (distance <= maxDistance) {
+                            found.merge(userId, distance, Math::min);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match> matches = new ArrayList<>(found.size());
+        found.forEach((userId, distance) -> matches.add(new Match(userId, distance)));
+        matches.sort(Comparator.comparingInt(Match::getDistance));
+        return matches;
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                Arrays.fill(buckets[chunk], null);
+                Arrays.fill(bucketSizes[chunk], 0);
+            }
+            size = 0;
+            live = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // An entry close enough on an earlier chunk was already seen there
+    private boolean foundInEarlierChunk(long entryHash, int[] queryChunks, int chunk, int chunkRadius) {
+        for (int earlier = 0; earlier < chunk; earlier++) {
+            if (Integer.bitCount(chunk(entryHash, earlier) ^ queryChunks[earlier]) <= chunkRadius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // All chunk values within the given number of flipped bits of value
+    private static List<Integer> neighbours(int value, int radius) {
+        List<Integer> values = new ArrayList<>();
+        collectNeighbours(value, radius, 0, values);
+        return values;
+    }
+
+    private static void collectNeighbours(int value, int radius, int fromBit, List<Integer> values) {
+        values.add(value);
+        if (radius == 0) {
+            return;
+        }
+        for (int bit = fromBit; bit < CHUNK_BITS; bit++) {
+            collectNeighbours(value ^ (1 << bit), radius - 1, bit + 1, values);
+        }
+    }
+
+    private static int chunk(long hash, int chunk) {
+        return (int) (hash >>> (chunk * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+}
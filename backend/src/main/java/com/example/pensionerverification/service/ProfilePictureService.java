@@ -0,0 +1,120 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Locates stored profile pictures and produces thumbnail variants at a fixed
+ * set of sizes. Thumbnails are generated on first request and cached under
+ * {@code <upload.dir>/thumbnails/<size>/}.
+ */
+@Service
+public class ProfilePictureService {
+
+    @Value("${upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${pensioner.profile-picture.thumbnail-sizes:64,128,256}")
+    private int[] thumbnailSizes;
+
+    private final ConcurrentHashMap<Path, Object> generationLocks = new ConcurrentHashMap<>();
+
+    public Path resolveProfilePicture(User user) {
+        return resolveProfilePicture(user.getProfilePicturePath());
+    }
+
+    public Path resolveProfilePicture(String storedPath) {
+        if (storedPath == null || storedPath.isEmpty()) {
+            return null;
+        }
+
+        // Stored paths are either "uploads/<file>" or "<file>"; both live directly in the upload dir
+        Path fileName = Paths.get(storedPath).getFileName();
+        Path fullPath = Paths.get(uploadDir).resolve(fileName);
+        return Files.isRegularFile(fullPath) ? fullPath : null;
+    }
+
+    public boolean isSupportedThumbnailSize(int size) {
+        return Arrays.stream(thumbnailSizes).anyMatch(s -> s == size);
+    }
+
+    public Path getThumbnail(Path original, int size) throws IOException {
+        String format = isPng(original) ? "png" : "jpg";
+        Path target = Paths.get(uploadDir, "thumbnails", Integer.toString(size),
+                original.getFileName().toString() + "." + format);
+
+        if (isFresh(target, original)) {
+            return target;
+        }
+
+        // Only one thread renders a given variant; the others wait and reuse it
+        Object lock = generationLocks.computeIfAbsent(target, k -> new Object());
+        try {
+            synchronized (lock) {
+                if (!isFresh(target, original)) {
+                    renderThumbnail(original, target, size, format);
+                }
+            }
+        } finally {
+            generationLocks.remove(target, lock);
+        }
+        return target;
+    }
+
+    private void renderThumbnail(Path original, Path target, int size, String format) throws IOException {
+        BufferedImage source = ImageIO.read(original.toFile());
+        if (source == null) {
+            throw new IOException("Unsupported image format: " + original.getFileName());
+        }
+
+        double scale = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage thumbnail = new BufferedImage(width, height,
+                "png".equals(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            if (!ImageIO.write(thumbnail, format, tmp.toFile())) {
+                throw new IOException("No image writer for " + format);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private boolean isFresh(Path thumbnail, Path original) throws IOException {
+        return Files.exists(thumbnail)
+                && Files.getLastModifiedTime(thumbnail).compareTo(Files.getLastModifiedTime(original)) >= 0;
+    }
+
+    private boolean isPng(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".png");
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.model.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a face embedding of each pensioner's profile picture on the user row,
+ * so verification can send the upstream a few kilobytes of vector instead of
+ * having it detect and embed the same reference photo on every attempt.
+ *
+ * Embeddings come from the upstream embedding endpoint, are computed in the
+ * background right after a picture is stored, and are stored as little-endian
+ * float32 bytes together with the model version that produced them. When the
+ * upstream reports a new model version, embeddings from the old one are no
+ * longer used and are recomputed by a scheduled refresh, which runs on the
+ * same background worker so it never holds up the shared scheduler thread.
+ * Until a user has a current embedding, verification falls back to sending
+ * the picture.
+ */
+@Service
+public class ReferenceEmbeddingService {
+
+    private static final int MAX_DIMENSIONS = 4096;
+
+    @Value("${huggingface.api.url:https://sushanadhikari-lightweight-liveliness.hf.space}")
+    private String huggingFaceApiUrl;
+
+    @Value("${huggingface.api.token:}")
+    private String huggingFaceToken;
+
+    @Value("${pensioner.embedding.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pensioner.embedding.path:/embed}")
+    private String embedPath;
+
+    // Upstream embedding calls per refresh run, to stay within the Space's quota
+    @Value("${pensioner.embedding.refresh-batch-size:100}")
+    private int refreshBatchSize;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProfilePictureService profilePictureService;
+    private final UpstreamMetrics upstreamMetrics;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Set while a refresh is queued or running on the worker
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final Runnable refreshTask = this::refreshStale;
+
+    // Single worker, bounded queue: pictures dropped when it is full are picked up by the refresh
+    private final ExecutorService worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1000), runnable -> {
+                Thread thread = new Thread(runnable, "reference-embedding");
+                thread.setDaemon(true);
+                return thread;
+            }, (runnable, executor) -> {
+                // A dropped refresh is simply queued again on the next run
+                if (runnable == refreshTask) {
+                    refreshQueued.set(false);
+                }
+            });
+
+    // Latest model version the upstream reported, null until it has answered once
+    private volatile String currentModelVersion;
+    // Set when the upstream has no embedding endpoint; everything falls back to pictures
+    private volatile boolean unsupported;
+    // Only touched on the worker
+    private long refreshCursor;
+
+    private final AtomicLong computed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong usedForVerification = new AtomicLong();
+    private final AtomicLong pictureFallbacks = new AtomicLong();
+
+    private static final class Embedding {
+        private final byte[] vector;
+        private final String modelVersion;
+
+        private Embedding(byte[] vector, String modelVersion) {
+            this.vector = vector;
+            this.modelVersion = modelVersion;
+        }
+    }
+
+    public ReferenceEmbeddingService(JdbcTemplate jdbcTemplate, ProfilePictureService profilePictureService,
+            UpstreamMetrics upstreamMetrics, @Qualifier("upstreamRestTemplate") RestTemplate restTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.profilePictureService = profilePictureService;
+        this.upstreamMetrics = upstreamMetrics;
+        this.restTemplate = restTemplate;
+    }
+
+    /** Drops the embedding of the user's previous picture; call before saving a new one. */
+    public void clearEmbedding(User user) {
+        user.setReferenceEmbedding(null);
+        user.setEmbeddingModelVersion(null);
+    }
+
+    /** Computes the embedding of the user's stored picture in the background; call after saving. */
+    public void scheduleEmbedding(User user) {
+        if (!enabled || unsupported || user.getId() == null) {
+            return;
+        }
+        long userId = user.getId();
+        String picturePath = user.getProfilePicturePath();
+        worker.execute(() -> embedAndStore(userId, picturePath));
+    }
+
+    /**
+     * @return the user's embedding if it was produced by the current model, else null
+     */
+    public byte[] getCurrentEmbedding(User user) {
+        byte[] embedding = user.getReferenceEmbedding();
+        if (!enabled || unsupported || embedding == null || embedding.length == 0) {
+            pictureFallbacks.incrementAndGet();
+            return null;
+        }
+        String current = currentModelVersion;
+        if (current != null && !current.equals(user.getEmbeddingModelVersion())) {
+            pictureFallbacks.incrementAndGet();
+            return null;
+        }
+        return embedding;
+    }
+
+    /** Called after an upstream verification call that used the embedding has succeeded. */
+    public void onEmbeddingUsed() {
+        usedForVerification.incrementAndGet();
+    }
+
+    /** Called when the upstream refused a verification call with the embedding and the picture is sent instead. */
+    public void onEmbeddingRejected() {
+        pictureFallbacks.incrementAndGet();
+    }
+
+    /**
+     * Called with the embedding model version the upstream reports: the one from
+     * the embedding endpoint, or embedding_model_version in a /predict answer.
+     */
+    public void onModelVersion(String version) {
+        if (version == null || version.isEmpty() || version.equals(currentModelVersion)) {
+            return;
+        }
+        if (currentModelVersion != null) {
+            System.out.println("Upstream embedding model changed from " + currentModelVersion + " to " + version
+                    + "; stored embeddings will be refreshed");
+        }
+        currentModelVersion = version;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("upstreamSupported", !unsupported);
+        snapshot.put("modelVersion", currentModelVersion);
+        snapshot.put("computed", computed.get());
+        snapshot.put("failed", failed.get());
+        snapshot.put("usedForVerification", usedForVerification.get());
+        snapshot.put("pictureFallbacks", pictureFallbacks.get());
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${pensioner.embedding.refresh-interval-ms:600000}")
+    public void scheduleRefresh() {
+        if (enabled && !unsupported && refreshQueued.compareAndSet(false, true)) {
+            worker.execute(refreshTask);
+        }
+    }
+
+    // Embeds pictures that have no embedding (bulk imports, older rows) or one from an older model
+    private void refreshStale() {
+        try {
+            refreshBatch();
+        } catch (Exception e) {
+            System.err.println("Reference embedding refresh failed: " + e.getMessage());
+        } finally {
+            refreshQueued.set(false);
+        }
+    }
+
+    private void refreshBatch() {
+        String current = currentModelVersion;
+        List<Map<String, Object>> rows = current == null
+                ? jdbcTemplate.queryForList("SELECT id, profile_picture_path FROM users "
+                        + "WHERE profile_picture_path IS NOT NULL AND reference_embedding IS NULL "
+                        + "AND id > ? ORDER BY id LIMIT ?", refreshCursor, refreshBatchSize)
+                : jdbcTemplate.queryForList("SELECT id, profile_picture_path FROM users "
+                        + "WHERE profile_picture_path IS NOT NULL AND (reference_embedding IS NULL "
+                        + "OR embedding_model_version IS NULL OR embedding_model_version <> ?) "
+                        + "AND id > ? ORDER BY id LIMIT ?", current, refreshCursor, refreshBatchSize);
+
+        // Wrap around once the end is reached, so pictures that failed get another try later
+        refreshCursor = rows.size() < refreshBatchSize ? 0
+                : ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+        for (Map<String, Object> row : rows) {
+            if (unsupported) {
+                return;
+            }
+            embedAndStore(((Number) row.get("id")).longValue(), (String) row.get("profile_picture_path"));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    void embedAndStore(long userId, String picturePath) {
+        Path picture = profilePictureService.resolveProfilePicture(picturePath);
+        if (picture == null) {
+            return;
+        }
+
+        try {
+            Embedding embedding = requestEmbedding(picture);
+            // Only store it if the user still has the picture it was computed from
+            jdbcTemplate.update("UPDATE users SET reference_embedding = ?, embedding_model_version = ? "
+                    + "WHERE id = ? AND profile_picture_path = ?",
+                    embedding.vector, embedding.modelVersion, userId, picturePath);
+            computed.incrementAndGet();
+        } catch (HttpClientErrorException e) {
+            failed.incrementAndGet();
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND || e.getStatusCode() == HttpStatus.METHOD_NOT_ALLOWED) {
+                unsupported = true;
+                System.err.println("Upstream has no embedding endpoint at " + embedPath
+                        + "; verification keeps sending profile pictures");
+            } else {
+                System.err.println("Failed to embed profile picture of user " + userId + ": " + e.getMessage());
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println("Failed to embed profile picture of user " + userId + ": " + e.getMessage());
+        }
+    }
+
+    private Embedding requestEmbedding(Path picture) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        if (huggingFaceToken != null && !huggingFaceToken.isEmpty()) {
+            headers.setBearerAuth(huggingFaceToken);
+        }
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("profile_image", new FileSystemResource(picture));
+
+        long start = System.nanoTime();
+        String response = restTemplate.postForObject(huggingFaceApiUrl + embedPath, new HttpEntity<>(body, headers),
+                String.class);
+        upstreamMetrics.recordBackgroundCall(UpstreamMetrics.PASS_EMBED, Files.size(picture),
+                System.nanoTime() - start);
+
+        // Accept both a plain object and Gradio's {"data": [ {...} ]} wrapping
+        JsonNode root = objectMapper.readTree(Objects.requireNonNullElse(response, "null"));
+        if (root.has("data")) {
+            root = root.get("data");
+        }
+        if (root.isArray() && root.size() > 0 && root.get(0).isObject()) {
+            root = root.get(0);
+        }
+
+        JsonNode vector = root.path("embedding");
+        if (!vector.isArray() || vector.size() == 0 || vector.size() > MAX_DIMENSIONS) {
+            throw new IOException("Upstream returned no usable embedding");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(vector.size() * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (JsonNode value : vector) {
+            if (!value.isNumber()) {
+                throw new IOException("Upstream embedding contains a non-numeric value");
+            }
+            buffer.putFloat(value.floatValue());
+        }
+
+        String modelVersion = root.path("model_version").asText("");
+        if (modelVersion.isEmpty()) {
+            throw new IOException("Upstream embedding has no model_version");
+        }
+        onModelVersion(modelVersion);
+        return new Embedding(buffer.array(), modelVersion);
+    }
+}
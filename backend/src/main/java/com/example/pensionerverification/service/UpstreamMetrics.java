@@ -0,0 +1,102 @@
+package com.example.pensionerverification.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts calls, bytes sent and latency of upstream verification calls per pass,
+ * plus how progressive verifications were decided and how the first real call
+ * after startup compared with warm-up.
+ */
+@Component
+public class UpstreamMetrics {
+
+    public static final String PASS_SAMPLE = "sample";
+    public static final String PASS_FULL = "full";
+    public static final String PASS_EMBED = "embed";
+
+    private static class PassCounters {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong latencyNanos = new AtomicLong();
+    }
+
+    private final Map<String, PassCounters> passes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> decisions = new ConcurrentHashMap<>();
+    private final AtomicLong lastCallMillis = new AtomicLong();
+
+    // Startup measurements
+    private volatile boolean warmedUp;
+    private volatile long warmupMillis = -1;
+    private volatile long firstCallLatencyMillis = -1;
+    private volatile Boolean firstCallAfterWarmup;
+
+    public void recordCall(String pass, long bytesSent, long latencyNanos) {
+        addToPass(pass, bytesSent, latencyNanos);
+
+        if (lastCallMillis.getAndSet(System.currentTimeMillis()) == 0) {
+            firstCallLatencyMillis = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+            firstCallAfterWarmup = warmedUp;
+        }
+    }
+
+    /**
+     * Counts a call made in the background (e.g. embeddings), which neither
+     * keeps the Space awake for keep-alive purposes nor is a first real call.
+     */
+    public void recordBackgroundCall(String pass, long bytesSent, long latencyNanos) {
+        addToPass(pass, bytesSent, latencyNanos);
+    }
+
+    /** Time of the last real (non warm-up, non background) upstream call, 0 if none yet. */
+    public long getLastCallMillis() {
+        return lastCallMillis.get();
+    }
+
+    public void recordWarmup(long millis) {
+        warmupMillis = millis;
+        warmedUp = true;
+    }
+
+    public void recordDecision(String decision) {
+        decisions.computeIfAbsent(decision, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private void addToPass(String pass, long bytesSent, long latencyNanos) {
+        PassCounters counters = passes.computeIfAbsent(pass, k -> new PassCounters());
+        counters.calls.incrementAndGet();
+        counters.bytesSent.addAndGet(bytesSent);
+        counters.latencyNanos.addAndGet(latencyNanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        passes.forEach((pass, counters) -> {
+            long calls = counters.calls.get();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("calls", calls);
+            values.put("bytesSent", counters.bytesSent.get());
+            values.put("averageBytesSent", calls == 0 ? 0 : counters.bytesSent.get() / calls);
+            values.put("averageLatencyMs",
+                    calls == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(counters.latencyNanos.get() / calls));
+            result.put(pass, values);
+        });
+
+        Map<String, Long> decisionCounts = new LinkedHashMap<>();
+        decisions.forEach((decision, count) -> decisionCounts.put(decision, count.get()));
+        result.put("decisions", decisionCounts);
+
+        Map<String, Object> startup = new LinkedHashMap<>();
+        startup.put("warmedUp", warmedUp);
+        startup.put("warmupMillis", warmupMillis);
+        startup.put("firstCallLatencyMs", firstCallLatencyMillis);
+        startup.put("firstCallAfterWarmup", firstCallAfterWarmup);
+        result.put("startup", startup);
+        return result;
+    }
+}
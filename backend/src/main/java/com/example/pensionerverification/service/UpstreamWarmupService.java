@@ -0,0 +1,272 @@
+package com.example.pensionerverification.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the HuggingFace Space behind huggingface.api.url awake.
+ *
+ * At startup the Space is pinged until it answers (waking it from sleep), a few
+ * connections are opened in the shared upstream pool, an optional synthetic
+ * /predict call loads the model and our response parser is exercised; only
+ * then is the backend reported ready. Afterwards the Space is pinged only when
+ * real traffic has been quiet for a whole interval, the interval backs off
+ * while the system is idle, and a daily cap keeps all pings, including the
+ * startup ones, within quota. While the Space is not answering it is pinged
+ * every tick, and any successful real call marks it ready again. If the cap
+ * runs out before the Space has answered at startup, the backend reports ready
+ * but degraded rather than staying unavailable until the cap resets.
+ */
+@Service
+public class UpstreamWarmupService {
+
+    private static final long STARTUP_RETRY_MAX_MILLIS = 60_000;
+
+    @Value("${huggingface.api.url:https://sushanadhikari-lightweight-liveliness.hf.space}")
+    private String huggingFaceApiUrl;
+
+    @Value("${huggingface.api.token:}")
+    private String huggingFaceToken;
+
+    @Value("${pensioner.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pensioner.warmup.ping-path:/}")
+    private String pingPath;
+
+    @Value("${pensioner.warmup.keepalive-interval-ms:600000}")
+    private long keepaliveIntervalMillis;
+
+    @Value("${pensioner.warmup.max-interval-ms:21600000}")
+    private long maxIntervalMillis;
+
+    // Without real traffic for this long the ping interval starts doubling
+    @Value("${pensioner.warmup.idle-backoff-after-ms:86400000}")
+    private long idleBackoffAfterMillis;
+
+    @Value("${pensioner.warmup.max-pings-per-day:200}")
+    private int maxPingsPerDay;
+
+    @Value("${pensioner.warmup.connections:2}")
+    private int connections;
+
+    @Value("${pensioner.warmup.sample-image:}")
+    private String sampleImage;
+
+    @Value("${pensioner.warmup.sample-video:}")
+    private String sampleVideo;
+
+    // First wait between startup pings; doubles up to a minute
+    @Value("${pensioner.warmup.startup-retry-ms:5000}")
+    private long startupRetryMillis;
+
+    private final HuggingFaceService huggingFaceService;
+    private final UpstreamMetrics upstreamMetrics;
+    private final RestTemplate pingTemplate;
+    private final long startedAt = System.currentTimeMillis();
+
+    private volatile boolean ready;
+    // Startup gave up on the ping cap without an answer; cleared by the first answer
+    private volatile boolean degraded;
+    // Set by the warm-up thread, 0 until startup warm-up is done
+    private volatile long lastPingMillis;
+
+    // Only touched by the scheduler thread after warm-up
+    private long currentIntervalMillis;
+
+    // Daily ping cap, guarded by "this"
+    private long pingDay;
+    private int pingsToday;
+
+    public UpstreamWarmupService(HuggingFaceService huggingFaceService, UpstreamMetrics upstreamMetrics,
+            @Qualifier("upstreamRestTemplate") RestTemplate pingTemplate) {
+        this.huggingFaceService = huggingFaceService;
+        this.upstreamMetrics = upstreamMetrics;
+        // Same connection pool as the verification calls, but bounded waits
+        this.pingTemplate = pingTemplate;
+    }
+
+    public boolean isReady() {
+        return ready || degraded || !enabled;
+    }
+
+    public boolean isDegraded() {
+        return degraded && !ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        currentIntervalMillis = keepaliveIntervalMillis;
+
+        Thread warmup = new Thread(this::warmUp, "upstream-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    void warmUp() {
+        long start = System.currentTimeMillis();
+
+        // A sleeping Space answers only once it has booted, which can take minutes
+        long retryDelay = startupRetryMillis;
+        while (true) {
+            if (!takePing()) {
+                // keepAlive takes over and pings again once the cap resets
+                lastPingMillis = System.currentTimeMillis();
+                degraded = true;
+                System.err.println("Upstream did not answer before the daily ping cap was used up; "
+                        + "reporting ready without warm-up");
+                return;
+            }
+            if (ping()) {
+                break;
+            }
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            retryDelay = Math.min(retryDelay * 2, STARTUP_RETRY_MAX_MILLIS);
+        }
+
+        openConnections();
+
+        if (sampleImage.isEmpty() || sampleVideo.isEmpty()) {
+            System.out.println("No warm-up sample files configured; the first verification will load the model");
+        } else {
+            Path image = Paths.get(sampleImage);
+            Path video = Paths.get(sampleVideo);
+            if (Files.exists(image) && Files.exists(video)) {
+                try {
+                    huggingFaceService.runSyntheticPrediction(image, video);
+                } catch (Exception e) {
+                    System.err.println("Synthetic warm-up prediction failed: " + e.getMessage());
+                }
+            } else {
+                System.err.println("Warm-up sample files not found: " + sampleImage + ", " + sampleVideo);
+            }
+        }
+
+        try {
+            huggingFaceService.warmUpResponseParser(2_000);
+        } catch (Exception e) {
+            System.err.println("Response parser warm-up failed: " + e.getMessage());
+        }
+
+        lastPingMillis = System.currentTimeMillis();
+        upstreamMetrics.recordWarmup(lastPingMillis - start);
+        ready = true;
+        System.out.println("Upstream warm-up finished in " + (lastPingMillis - start) + " ms");
+    }
+
+    // Parallel pings each lease their own pooled connection, which then stays idle in the pool
+    private void openConnections() {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            Thread thread = new Thread(() -> {
+                if (takePing()) {
+                    ping();
+                }
+            }, "upstream-connect-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pensioner.warmup.tick-ms:60000}")
+    public void keepAlive() {
+        if (!enabled || lastPingMillis == 0) {
+            // Startup warm-up still running
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long lastCall = upstreamMetrics.getLastCallMillis();
+        long lastTraffic = Math.max(lastCall, startedAt);
+        if (lastCall > lastPingMillis) {
+            // A real call has succeeded since the last ping, so the Space is up
+            ready = true;
+            degraded = false;
+        }
+
+        // Until the Space answers again, ping on every tick
+        if (ready) {
+            if (now - lastTraffic < keepaliveIntervalMillis) {
+                // Real verifications are keeping the Space awake
+                currentIntervalMillis = keepaliveIntervalMillis;
+                return;
+            }
+            if (now - lastPingMillis < currentIntervalMillis) {
+                return;
+            }
+        }
+
+        if (!takePing()) {
+            return;
+        }
+        lastPingMillis = now;
+        ready = ping();
+        if (ready) {
+            degraded = false;
+        }
+
+        if (now - lastTraffic > idleBackoffAfterMillis) {
+            currentIntervalMillis = Math.min(currentIntervalMillis * 2, maxIntervalMillis);
+        } else {
+            currentIntervalMillis = keepaliveIntervalMillis;
+        }
+    }
+
+    // Counts a ping against the daily cap; false once today's pings are used up
+    private synchronized boolean takePing() {
+        long today = LocalDate.now().toEpochDay();
+        if (today != pingDay) {
+            pingDay = today;
+            pingsToday = 0;
+        }
+        if (pingsToday >= maxPingsPerDay) {
+            return false;
+        }
+        pingsToday++;
+        return true;
+    }
+
+    private boolean ping() {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (huggingFaceToken != null && !huggingFaceToken.isEmpty()) {
+                headers.setBearerAuth(huggingFaceToken);
+            }
+            return pingTemplate.exchange(huggingFaceApiUrl + pingPath, HttpMethod.GET, new HttpEntity<>(headers),
+                    String.class).getStatusCode().is2xxSuccessful();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
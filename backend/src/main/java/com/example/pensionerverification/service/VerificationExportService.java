@@ -0,0 +1,145 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.model.User;
+import com.example.pensionerverification.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the verification status of every pensioner as CSV or NDJSON.
+ *
+ * Users are read through a forward-only cursor and detached from the
+ * persistence context as soon as they are written, so memory use stays flat
+ * no matter how many rows the table holds.
+ */
+@Service
+public class VerificationExportService {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final UserRepository userRepository;
+    private final VerificationPolicy verificationPolicy;
+    private final TransactionTemplate readOnlyTransaction;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public VerificationExportService(UserRepository userRepository, VerificationPolicy verificationPolicy,
+            PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.verificationPolicy = verificationPolicy;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public long export(OutputStream out, Format format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        try {
+            Long rows = readOnlyTransaction.execute(status -> {
+                try (Stream<User> users = userRepository.streamAllOrderById()) {
+                    return format == Format.CSV ? writeCsv(users, writer) : writeNdjson(users, writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+            return rows == null ? 0 : rows;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long writeCsv(Stream<User> users, Writer writer) throws IOException {
+        writer.write("username,lastVerificationDate,verificationRequired,hasProfilePicture\n");
+
+        long now = System.currentTimeMillis();
+        long rows = 0;
+        Iterator<User> it = users.iterator();
+        while (it.hasNext()) {
+            User user = it.next();
+            writer.write(csvEscape(user.getUsername()));
+            writer.write(',');
+            if (user.getLastVerificationDate() != null) {
+                writer.write(user.getLastVerificationDate().toInstant().toString());
+            }
+            writer.write(',');
+            writer.write(Boolean.toString(verificationPolicy.isVerificationRequired(user.getLastVerificationDate(), now)));
+            writer.write(',');
+            writer.write(Boolean.toString(hasProfilePicture(user)));
+            writer.write('\n');
+
+            entityManager.detach(user);
+            rows++;
+        }
+        return rows;
+    }
+
+    private long writeNdjson(Stream<User> users, Writer writer) throws IOException {
+        long now = System.currentTimeMillis();
+        long rows = 0;
+
+        // Generator must not close the servlet stream; the caller owns it
+        JsonGenerator generator = jsonFactory.createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+
+        Iterator<User> it = users.iterator();
+        while (it.hasNext()) {
+            User user = it.next();
+            generator.writeStartObject();
+            generator.writeStringField("username", user.getUsername());
+            if (user.getLastVerificationDate() != null) {
+                generator.writeStringField("lastVerificationDate",
+                        user.getLastVerificationDate().toInstant().toString());
+            } else {
+                generator.writeNullField("lastVerificationDate");
+            }
+            generator.writeBooleanField("verificationRequired",
+                    verificationPolicy.isVerificationRequired(user.getLastVerificationDate(), now));
+            generator.writeBooleanField("hasProfilePicture", hasProfilePicture(user));
+            generator.writeEndObject();
+
+            entityManager.detach(user);
+            rows++;
+        }
+
+        generator.flush();
+        if (rows > 0) {
+            writer.write('\n');
+        }
+        return rows;
+    }
+
+    private boolean hasProfilePicture(User user) {
+        return user.getProfilePicturePath() != null && !user.getProfilePicturePath().isEmpty();
+    }
+
+    static String csvEscape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.model.User;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+
+@Component
+public class VerificationPolicy {
+
+    // Verifications older than 6 months (typical pension renewal period) must be repeated
+    public static final long RENEWAL_PERIOD_MILLIS = 6L * 30 * 24 * 60 * 60 * 1000;
+
+    public boolean isVerificationRequired(User user) {
+        return isVerificationRequired(user.getLastVerificationDate(), System.currentTimeMillis());
+    }
+
+    public boolean isVerificationRequired(Date lastVerificationDate, long now) {
+        if (lastVerificationDate == null) {
+            return true;
+        }
+
+        long timeSinceLastVerification = now - lastVerificationDate.getTime();
+        return timeSinceLastVerification > RENEWAL_PERIOD_MILLIS;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.pensionerverification.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dashboard counters kept up to date from registration and verification events,
+ * so reading them never scans the users table.
+ *
+ * Last verification dates are bucketed per day over the renewal window; a user
+ * whose bucket slides out of the window becomes overdue. Buckets have day
+ * resolution and a bucket stays in the window until its whole day has passed,
+ * so a user can still show as verified up to a day after
+ * {@link VerificationPolicy} already considers them overdue. The counters are
+ * rebuilt from the database at startup and then periodically to correct any
+ * drift (e.g. direct SQL edits). Events that arrive while the database is being
+ * read are replayed onto the rebuilt counters.
+ */
+@Service
+public class VerificationStatisticsService {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int WINDOW_DAYS = (int) (VerificationPolicy.RENEWAL_PERIOD_MILLIS / DAY_MILLIS);
+    private static final int ATTEMPT_HISTORY_DAYS = 30;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+    private final ZoneId zone;
+
+    // All state below is guarded by "this"
+    private long totalUsers;
+    private long neverVerified;
+    // Ring buffers indexed by epoch day
+    private final long[] verifiedByDay = new long[WINDOW_DAYS + 1];
+    private long verifiedInWindow;
+    private final long[] attemptsByDay = new long[ATTEMPT_HISTORY_DAYS];
+    private final long[] spoofingByDay = new long[ATTEMPT_HISTORY_DAYS];
+    private long currentDay;
+    private Instant lastReconciled;
+    // Events seen while reconcile reads the database; null when no reconcile is running
+    private List<VerifiedEvent> replayVerified;
+    private long replayUsers;
+
+    @Autowired
+    public VerificationStatisticsService(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, Clock.systemDefaultZone());
+    }
+
+    VerificationStatisticsService(JdbcTemplate jdbcTemplate, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        this.zone = clock.getZone();
+        this.currentDay = today();
+    }
+
+    public synchronized void onUserRegistered() {
+        onUsersImported(1);
+    }
+
+    public synchronized void onUsersImported(long count) {
+        advance();
+        totalUsers += count;
+        neverVerified += count;
+        if (replayVerified != null) {
+            replayUsers += count;
+        }
+    }
+
+    /**
+     * @param previousVerification the user's last verification date before this attempt
+     */
+    public synchronized void onVerificationAttempt(Date previousVerification, boolean verified, boolean spoofing) {
+        advance();
+        int slot = (int) (currentDay % ATTEMPT_HISTORY_DAYS);
+        attemptsByDay[slot]++;
+        if (spoofing) {
+            spoofingByDay[slot]++;
+        }
+
+        if (!verified) {
+            return;
+        }
+
+        VerifiedEvent event = new VerifiedEvent(currentDay,
+                previousVerification == null ? null : epochDay(previousVerification));
+        applyVerified(event);
+        if (replayVerified != null) {
+            replayVerified.add(event);
+        }
+    }
+
+    private void applyVerified(VerifiedEvent event) {
+        if (event.previousDay == null) {
+            neverVerified--;
+        } else if (inWindow(event.previousDay)) {
+            verifiedByDay[(int) (event.previousDay % verifiedByDay.length)]--;
+            verifiedInWindow--;
+        }
+        if (inWindow(event.day)) {
+            verifiedByDay[(int) (event.day % verifiedByDay.length)]++;
+            verifiedInWindow++;
+        }
+    }
+
+    private boolean inWindow(long day) {
+        return day <= currentDay && currentDay - day <= WINDOW_DAYS;
+    }
+
+    public synchronized Map<String, Object> getSnapshot() {
+        advance();
+
+        LocalDate today = LocalDate.ofEpochDay(currentDay);
+        long verifiedThisMonth = 0;
+        for (long day = today.withDayOfMonth(1).toEpochDay(); day <= currentDay; day++) {
+            verifiedThisMonth += verifiedByDay[(int) (day % verifiedByDay.length)];
+        }
+
+        Map<String, Long> attemptsPerDay = new LinkedHashMap<>();
+        Map<String, Long> spoofingPerDay = new LinkedHashMap<>();
+        for (long day = currentDay - ATTEMPT_HISTORY_DAYS + 1; day <= currentDay; day++) {
+            int slot = (int) (day % ATTEMPT_HISTORY_DAYS);
+            String key = LocalDate.ofEpochDay(day).toString();
+            attemptsPerDay.put(key, attemptsByDay[slot]);
+            spoofingPerDay.put(key, spoofingByDay[slot]);
+        }
+
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("totalUsers", totalUsers);
+        snapshot.put("neverVerified", neverVerified);
+        snapshot.put("verifiedWithinRenewalPeriod", verifiedInWindow);
+        snapshot.put("overdue", Math.max(0, totalUsers - neverVerified - verifiedInWindow));
+        snapshot.put("verifiedThisMonth", verifiedThisMonth);
+        snapshot.put("verificationAttemptsPerDay", attemptsPerDay);
+        snapshot.put("spoofingAttemptsPerDay", spoofingPerDay);
+        snapshot.put("lastReconciled", lastReconciled == null ? null : lastReconciled.toString());
+        snapshot.put("timestamp", clock.millis());
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${pensioner.statistics.reconcile-interval-ms:900000}")
+    public void reconcile() {
+        synchronized (this) {
+            if (replayVerified != null) {
+                return; // Another reconcile is already reading
+            }
+            replayVerified = new ArrayList<>();
+            replayUsers = 0;
+        }
+
+        try {
+            // One day of slack so the window still covers today if the date changes while reading
+            LocalDate windowStart = LocalDate.ofEpochDay(today() - WINDOW_DAYS - 1);
+
+            Map<String, Object> totals = jdbcTemplate.queryForMap(
+                    "SELECT COUNT(*) AS total, COUNT(last_verification_date) AS verified FROM users");
+            long total = ((Number) totals.get("total")).longValue();
+            long verified = ((Number) totals.get("verified")).longValue();
+
+            // Bucketed here rather than with CAST(... AS DATE), so days follow the same zone as the events
+            Map<Long, Long> usersByDay = new HashMap<>();
+            jdbcTemplate.query("SELECT last_verification_date FROM users WHERE last_verification_date >= ?",
+                    (RowCallbackHandler) rs -> usersByDay.merge(epochDay(rs.getTimestamp(1)), 1L, Long::sum),
+                    Timestamp.from(windowStart.atStartOfDay(zone).toInstant()));
+
+            // Attempt/spoofing counters only exist as events and are kept as they are
+            synchronized (this) {
+                advance();
+                totalUsers = total + replayUsers;
+                neverVerified = total - verified + replayUsers;
+                Arrays.fill(verifiedByDay, 0);
+                verifiedInWindow = 0;
+                for (Map.Entry<Long, Long> entry : usersByDay.entrySet()) {
+                    long day = entry.getKey();
+                    if (inWindow(day)) {
+                        verifiedByDay[(int) (day % verifiedByDay.length)] += entry.getValue();
+                        verifiedInWindow += entry.getValue();
+                    }
+                }
+                for (VerifiedEvent event : replayVerified) {
+                    applyVerified(event);
+                }
+                lastReconciled = clock.instant();
+            }
+        } finally {
+            synchronized (this) {
+                replayVerified = null;
+            }
+        }
+    }
+
+    // Rolls the ring buffers forward to today, dropping buckets that left their window
+    private void advance() {
+        long today = today();
+        if (today <= currentDay) {
+            return;
+        }
+
+        if (today - currentDay >= verifiedByDay.length) {
+            Arrays.fill(verifiedByDay, 0);
+            verifiedInWindow = 0;
+        } else {
+            for (long day = currentDay + 1; day <= today; day++) {
+                int slot = (int) (day % verifiedByDay.length);
+                verifiedInWindow -= verifiedByDay[slot];
+                verifiedByDay[slot] = 0;
+            }
+        }
+
+        if (today - currentDay >= ATTEMPT_HISTORY_DAYS) {
+            Arrays.fill(attemptsByDay, 0);
+            Arrays.fill(spoofingByDay, 0);
+        } else {
+            for (long day = currentDay + 1; day <= today; day++) {
+                int slot = (int) (day % ATTEMPT_HISTORY_DAYS);
+                attemptsByDay[slot] = 0;
+                spoofingByDay[slot] = 0;
+            }
+        }
+        currentDay = today;
+    }
+
+    private long today() {
+        return LocalDate.now(clock).toEpochDay();
+    }
+
+    private long epochDay(Date date) {
+        return Instant.ofEpochMilli(date.getTime()).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    private static final class VerifiedEvent {
+
+        private final long day;
+        private final Long previousDay;
+
+        private VerifiedEvent(long day, Long previousDay) {
+            this.day = day;
+            this.previousDay = previousDay;
+        }
+    }
+}
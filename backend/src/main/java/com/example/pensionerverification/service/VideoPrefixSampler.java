@@ -0,0 +1,141 @@
+package com.example.pensionerverification.service;
+
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cuts the first part of a recorded clip into a smaller file that is still a
+ * playable video, for the first pass of progressive verification.
+ *
+ * Only streamable containers can be cut without re-encoding: WebM is cut in
+ * front of a Cluster and fragmented MP4 in front of a moof box. Anything else
+ * (e.g. a regular MP4 whose sample tables cover the whole file) gets no sample.
+ */
+@Component
+public class VideoPrefixSampler {
+
+    private static final int WEBM_CLUSTER_ID = 0x1F43B675;
+    private static final int WEBM_TIMECODE_ID = 0xE7;
+
+    /**
+     * @return the sample file, or null if this clip can't be cut
+     */
+    public Path writePrefixSample(Path video, double fraction) throws IOException {
+        long size = Files.size(video);
+        long target = (long) (size * fraction);
+        if (target <= 0 || target >= size) {
+            return null;
+        }
+
+        long cut;
+        try (FileChannel channel = FileChannel.open(video, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(8);
+            channel.read(magic, 0);
+            if (magic.position() < 8) {
+                return null;
+            }
+
+            if (magic.getInt(0) == 0x1A45DFA3) {
+                cut = findWebmCut(video, target);
+            } else if ("ftyp".equals(ascii(magic, 4))) {
+                cut = findFragmentedMp4Cut(channel, size, target);
+            } else {
+                cut = -1;
+            }
+
+            if (cut <= 0 || cut >= size) {
+                return null;
+            }
+
+            Path sample = Files.createTempFile(video.getParent(), "sample-", "-" + video.getFileName());
+            try (FileChannel out = FileChannel.open(sample, StandardOpenOption.WRITE)) {
+                long position = 0;
+                while (position < cut) {
+                    position += channel.transferTo(position, cut - position, out);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(sample);
+                throw e;
+            }
+            return sample;
+        }
+    }
+
+    // First moof box starting at or after the target offset, so the sample ends on a whole fragment
+    private long findFragmentedMp4Cut(FileChannel channel, long size, long target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long pos = 0;
+        boolean seenFragment = false;
+        while (pos + 8 <= size) {
+            header.clear();
+            channel.read(header, pos);
+            if (header.position() < 8) {
+                return -1;
+            }
+
+            long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+            String type = ascii(header, 4);
+            if (boxSize == 1 && header.position() >= 16) {
+                boxSize = header.getLong(8);
+            } else if (boxSize == 0) {
+                boxSize = size - pos;
+            }
+            if (boxSize < 8) {
+                return -1;
+            }
+
+            if ("moof".equals(type)) {
+                if (seenFragment && pos >= target) {
+                    return pos;
+                }
+                seenFragment = true;
+            }
+            pos += boxSize;
+        }
+        return -1;
+    }
+
+    // Next Cluster element (ID, size, then a Timecode child) at or after the target offset
+    private long findWebmCut(Path video, long target) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(video), 64 * 1024)) {
+            in.skipNBytes(target);
+            long pos = target;
+            int window = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                pos++;
+                window = (window << 8) | b;
+                if (window != WEBM_CLUSTER_ID) {
+                    continue;
+                }
+
+                in.mark(16);
+                int sizeFirst = in.read();
+                int sizeLength = Integer.numberOfLeadingZeros(sizeFirst & 0xFF) - 23;
+                if (sizeFirst > 0 && sizeLength >= 1 && sizeLength <= 8
+                        && in.skip(sizeLength - 1) == sizeLength - 1 && in.read() == WEBM_TIMECODE_ID) {
+                    return pos - 4;
+                }
+                in.reset();
+            }
+        }
+        return -1;
+    }
+
+    private String ascii(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
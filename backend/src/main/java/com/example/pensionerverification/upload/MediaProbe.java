@@ -0,0 +1,356 @@
+package com.example.pensionerverification.upload;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Identifies uploads by their magic bytes and reads duration / resolution from
+ * the container header, using only the first bytes of the file.
+ *
+ * Supported: JPEG, PNG, MP4 / MOV (ISO base media) and WebM / Matroska. Values
+ * that aren't present in the inspected prefix (e.g. an MP4 with its moov box at
+ * the end) are left null.
+ */
+public class MediaProbe {
+
+    public enum Kind {
+        IMAGE, VIDEO
+    }
+
+    /** Bytes needed before {@link #identify} can decide. */
+    public static final int MAGIC_BYTES = 12;
+
+    private static final int EBML_HEADER = 0x1A45DFA3;
+    private static final int EBML_SEGMENT = 0x18538067;
+    private static final int EBML_INFO = 0x1549A966;
+    private static final int EBML_TRACKS = 0x1654AE6B;
+    private static final int EBML_TRACK_ENTRY = 0xAE;
+    private static final int EBML_VIDEO = 0xE0;
+    private static final int EBML_CLUSTER = 0x1F43B675;
+    private static final int EBML_TIMECODE_SCALE = 0x2AD7B1;
+    private static final int EBML_DURATION = 0x4489;
+    private static final int EBML_PIXEL_WIDTH = 0xB0;
+    private static final int EBML_PIXEL_HEIGHT = 0xBA;
+
+    private final Kind kind;
+    private final String format;
+    private final String contentType;
+
+    private Double durationSeconds;
+    private Integer width;
+    private Integer height;
+
+    // Matroska scratch state
+    private long timecodeScale = 1_000_000L;
+    private Double rawDuration;
+
+    private MediaProbe(Kind kind, String format, String contentType) {
+        this.kind = kind;
+        this.format = format;
+        this.contentType = contentType;
+    }
+
+    public static MediaProbe identify(byte[] data, int length) {
+        if (length >= 3 && u8(data, 0) == 0xFF && u8(data, 1) == 0xD8 && u8(data, 2) == 0xFF) {
+            return new MediaProbe(Kind.IMAGE, "jpeg", "image/jpeg");
+        }
+        if (length >= 8 && u8(data, 0) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G'
+                && data[4] == '\r' && data[5] == '\n' && u8(data, 6) == 0x1A && data[7] == '\n') {
+            return new MediaProbe(Kind.IMAGE, "png", "image/png");
+        }
+        if (length >= 4 && (int) u32(data, 0) == EBML_HEADER) {
+            return new MediaProbe(Kind.VIDEO, "webm", "video/webm");
+        }
+        if (length >= 12) {
+            String boxType = ascii(data, 4, 4);
+            if ("ftyp".equals(boxType)) {
+                return "qt  ".equals(ascii(data, 8, 4))
+                        ? new MediaProbe(Kind.VIDEO, "mov", "video/quicktime")
+                        : new MediaProbe(Kind.VIDEO, "mp4", "video/mp4");
+            }
+            // Old QuickTime files start straight with one of these atoms
+            if ("moov".equals(boxType) || "mdat".equals(boxType) || "wide".equals(boxType)
+                    || "free".equals(boxType) || "skip".equals(boxType)) {
+                return new MediaProbe(Kind.VIDEO, "mov", "video/quicktime");
+            }
+        }
+        return null;
+    }
+
+    public void probe(byte[] data, int length) {
+        try {
+            switch (format) {
+                case "jpeg" -> probeJpeg(data, length);
+                case "png" -> probePng(data, length);
+                case "webm" -> probeEbml(data, 0, length);
+                default -> probeBoxes(data, 0, length);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Truncated header, keep whatever was read
+        }
+
+        if (rawDuration != null && durationSeconds == null) {
+            durationSeconds = rawDuration * timecodeScale / 1_000_000_000.0;
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    private void probeJpeg(byte[] data, int length) {
+        int i = 2;
+        while (i + 4 <= length) {
+            if (u8(data, i) != 0xFF) {
+                return;
+            }
+            int marker = u8(data, i + 1);
+            if (marker == 0xFF) {
+                i++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                i += 2;
+                continue;
+            }
+            // End of image or start of scan: no frame header before the pixel data
+            if (marker == 0xD9 || marker == 0xDA) {
+                return;
+            }
+
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                if (i + 9 <= length) {
+                    height = u16(data, i + 5);
+                    width = u16(data, i + 7);
+                }
+                return;
+            }
+            i += 2 + u16(data, i + 2);
+        }
+    }
+
+    private void probePng(byte[] data, int length) {
+        if (length >= 24 && "IHDR".equals(ascii(data, 12, 4))) {
+            width = toDimension(u32(data, 16));
+            height = toDimension(u32(data, 20));
+        }
+    }
+
+    private void probeBoxes(byte[] data, int start, int end) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            long size = u32(data, pos);
+            String type = ascii(data, pos + 4, 4);
+            int header = 8;
+            if (size == 1) {
+                if (pos + 16 > end) {
+                    return;
+                }
+                size = u64(data, pos + 8);
+                header = 16;
+            } else if (size == 0) {
+                size = end - pos;
+            }
+            if (size < header) {
+                return;
+            }
+
+            int body = pos + header;
+            int available = (int) Math.min(pos + size, end);
+            switch (type) {
+                case "moov", "trak", "mdia" -> probeBoxes(data, body, available);
+                case "mvhd" -> readMovieHeader(data, body, available);
+                case "tkhd" -> readTrackHeader(data, body, available);
+                default -> {
+                }
+            }
+
+            if (pos + size > end) {
+                return;
+            }
+            pos += (int) size;
+        }
+    }
+
+    private void readMovieHeader(byte[] data, int p, int end) {
+        int version = u8(data, p);
+        long timescale;
+        long duration;
+        if (version == 1) {
+            if (p + 32 > end) {
+                return;
+            }
+            timescale = u32(data, p + 20);
+            duration = u64(data, p + 24);
+        } else {
+            if (p + 20 > end) {
+                return;
+            }
+            timescale = u32(data, p + 12);
+            duration = u32(data, p + 16);
+        }
+        // Fragmented MP4 (e.g. MediaRecorder) leaves the duration at 0 or all ones
+        if (timescale > 0 && duration > 0 && duration != 0xFFFFFFFFL && duration != -1L) {
+            durationSeconds = (double) duration / timescale;
+        }
+    }
+
+    private void readTrackHeader(byte[] data, int p, int end) {
+        int offset = u8(data, p) == 1 ? 88 : 76;
+        if (width != null || p + offset + 8 > end) {
+            return;
+        }
+        // 16.16 fixed point; audio tracks report 0x0
+        int w = (int) (u32(data, p + offset) >>> 16);
+        int h = (int) (u32(data, p + offset + 4) >>> 16);
+        if (w > 0 && h > 0) {
+            width = w;
+            height = h;
+        }
+    }
+
+    /** Returns false once a Cluster is reached, i.e. the headers are over. */
+    private boolean probeEbml(byte[] data, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            int idLength = vintLength(u8(data, pos));
+            if (idLength == 0 || idLength > 4 || pos + idLength >= end) {
+                return false;
+            }
+            int id = (int) readRaw(data, pos, idLength);
+
+            int sizeLength = vintLength(u8(data, pos + idLength));
+            if (sizeLength == 0 || pos + idLength + sizeLength > end) {
+                return false;
+            }
+            long size = readVint(data, pos + idLength, sizeLength);
+            boolean unknownSize = size == (1L << (7 * sizeLength)) - 1;
+
+            int body = pos + idLength + sizeLength;
+            int bodyEnd = unknownSize ? end : (int) Math.min(body + size, end);
+            // Leaf values are only read when fully inside the inspected prefix
+            boolean complete = !unknownSize && size <= 8 && body + size <= end;
+
+            switch (id) {
+                case EBML_CLUSTER:
+                    return false;
+                case EBML_HEADER:
+                case EBML_SEGMENT:
+                case EBML_INFO:
+                case EBML_TRACKS:
+                case EBML_TRACK_ENTRY:
+                case EBML_VIDEO:
+                    if (!probeEbml(data, body, bodyEnd)) {
+                        return false;
+                    }
+                    break;
+                case EBML_TIMECODE_SCALE:
+                    if (complete && size > 0) {
+                        timecodeScale = readRaw(data, body, (int) size);
+                    }
+                    break;
+                case EBML_DURATION:
+                    if (!complete) {
+                        break;
+                    }
+                    if (size == 4) {
+                        rawDuration = (double) Float.intBitsToFloat((int) readRaw(data, body, 4));
+                    } else if (size == 8) {
+                        rawDuration = Double.longBitsToDouble(readRaw(data, body, 8));
+                    }
+                    break;
+                case EBML_PIXEL_WIDTH:
+                    if (complete && width == null) {
+                        width = toDimension(readRaw(data, body, (int) size));
+                    }
+                    break;
+                case EBML_PIXEL_HEIGHT:
+                    if (complete && height == null) {
+                        height = toDimension(readRaw(data, body, (int) size));
+                    }
+                    break;
+                default:
+                    if (unknownSize) {
+                        return false;
+                    }
+            }
+
+            if (unknownSize || body + size > end) {
+                return true;
+            }
+            pos = (int) (body + size);
+        }
+        return true;
+    }
+
+    private static int vintLength(int firstByte) {
+        for (int i = 0; i < 8; i++) {
+            if ((firstByte & (0x80 >>> i)) != 0) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static long readVint(byte[] data, int pos, int length) {
+        long value = u8(data, pos) & (0xFF >>> length);
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | u8(data, pos + i);
+        }
+        return value;
+    }
+
+    private static long readRaw(byte[] data, int pos, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | u8(data, pos + i);
+        }
+        return value;
+    }
+
+    private static int u8(byte[] data, int pos) {
+        return data[pos] & 0xFF;
+    }
+
+    // Headers may claim sizes past int range; keep them as huge rather than letting the cast wrap negative
+    private static int toDimension(long value) {
+        return value < 0 || value > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) value;
+    }
+
+    private static int u16(byte[] data, int pos) {
+        return (u8(data, pos) << 8) | u8(data, pos + 1);
+    }
+
+    private static long u32(byte[] data, int pos) {
+        return ((long) u8(data, pos) << 24) | (u8(data, pos + 1) << 16) | (u8(data, pos + 2) << 8) | u8(data, pos + 3);
+    }
+
+    private static long u64(byte[] data, int pos) {
+        return (u32(data, pos) << 32) | u32(data, pos + 4);
+    }
+
+    private static String ascii(byte[] data, int pos, int length) {
+        return new String(data, pos, length, StandardCharsets.ISO_8859_1);
+    }
+}
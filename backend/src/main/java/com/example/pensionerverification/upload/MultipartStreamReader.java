@@ -0,0 +1,204 @@
+package com.example.pensionerverification.upload;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Minimal forward-only multipart/form-data parser. Part bodies are pushed into
+ * a caller supplied OutputStream as they arrive, so a part can be inspected (and
+ * rejected) before the rest of the request has been read.
+ */
+class MultipartStreamReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buf;
+    private final long maxBytes;
+
+    private int pos;
+    private int limit;
+    private long totalRead;
+    private boolean started;
+    private boolean partOpen;
+    private boolean finished;
+    private Map<String, String> headers;
+
+    MultipartStreamReader(InputStream in, String boundary, long maxBytes) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buf = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+        this.maxBytes = maxBytes;
+
+        // Pretend the body starts with CRLF so the first boundary matches the delimiter too
+        buf[0] = '\r';
+        buf[1] = '\n';
+        limit = 2;
+    }
+
+    boolean nextPart() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        if (!started) {
+            started = true;
+            // Discard the preamble
+            if (!readUntilDelimiter(OutputStream.nullOutputStream())) {
+                throw malformed("No multipart boundary found");
+            }
+        } else if (partOpen) {
+            readPartBody(OutputStream.nullOutputStream());
+        }
+
+        // After a delimiter "--" closes the body, anything else is padding up to the CRLF
+        if (!ensure(2)) {
+            throw malformed("Unexpected end of multipart body");
+        }
+        if (buf[pos] == '-' && buf[pos + 1] == '-') {
+            finished = true;
+            return false;
+        }
+        while (true) {
+            if (!ensure(1)) {
+                throw malformed("Unexpected end of multipart body");
+            }
+            if (buf[pos++] == '\n') {
+                break;
+            }
+        }
+
+        headers = readHeaders();
+        partOpen = true;
+        return true;
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    void readPartBody(OutputStream sink) throws IOException {
+        if (!partOpen) {
+            throw new IllegalStateException("No part to read");
+        }
+        partOpen = false;
+        if (!readUntilDelimiter(sink)) {
+            throw malformed("Unexpected end of multipart body");
+        }
+    }
+
+    private boolean readUntilDelimiter(OutputStream sink) throws IOException {
+        while (true) {
+            int idx = indexOfDelimiter();
+            if (idx >= 0) {
+                sink.write(buf, pos, idx - pos);
+                pos = idx + delimiter.length;
+                return true;
+            }
+
+            // Everything except a possibly truncated delimiter at the end is body data
+            int safe = Math.max(pos, limit - (delimiter.length - 1));
+            sink.write(buf, pos, safe - pos);
+            pos = safe;
+
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> result = new LinkedCaseInsensitiveMap<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int headerBytes = 0;
+
+        while (true) {
+            if (!ensure(1)) {
+                throw malformed("Unexpected end of part headers");
+            }
+            byte b = buf[pos++];
+            if (++headerBytes > MAX_HEADER_BYTES) {
+                throw malformed("Part headers too large");
+            }
+            if (b == '\r') {
+                continue;
+            }
+            if (b != '\n') {
+                line.write(b);
+                continue;
+            }
+
+            if (line.size() == 0) {
+                return result;
+            }
+            // Browsers send non-ASCII file names as raw UTF-8
+            String header = line.toString(StandardCharsets.UTF_8);
+            line.reset();
+            int colon = header.indexOf(':');
+            if (colon > 0) {
+                result.put(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
+            }
+        }
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        for (int i = pos; i <= last; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < delimiter.length && buf[i + j] == delimiter[j]) {
+                j++;
+            }
+            if (j == delimiter.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean ensure(int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            return false;
+        }
+
+        totalRead += n;
+        if (totalRead > maxBytes) {
+            throw new UploadRejectedException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Upload too large. Maximum request size is " + (maxBytes / (1024 * 1024)) + "MB.");
+        }
+        limit += n;
+        return true;
+    }
+
+    private UploadRejectedException malformed(String message) {
+        return new UploadRejectedException(HttpServletResponse.SC_BAD_REQUEST, "Malformed upload: " + message);
+    }
+}
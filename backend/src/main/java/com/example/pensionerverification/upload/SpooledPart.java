@@ -0,0 +1,146 @@
+package com.example.pensionerverification.upload;
+
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.Part;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A multipart part already read by {@link UploadValidationFilter}. File parts are
+ * spooled to a temporary file, plain form fields are kept in memory.
+ */
+class SpooledPart implements Part {
+
+    private static final int MAX_FIELD_BYTES = 64 * 1024;
+
+    private final String name;
+    private final String submittedFileName;
+    private final Map<String, String> headers;
+    private String contentType;
+    private Path file;
+    private byte[] data;
+    private long size;
+
+    SpooledPart(String name, String submittedFileName, Map<String, String> headers) {
+        this.name = name;
+        this.submittedFileName = submittedFileName;
+        this.headers = headers;
+        this.contentType = headers.get("Content-Type");
+    }
+
+    OutputStream open() throws IOException {
+        if (submittedFileName == null) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            return new FilterOutputStream(buffer) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (buffer.size() + len > MAX_FIELD_BYTES) {
+                        throw new UploadRejectedException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                                "Form field '" + name + "' is too large");
+                    }
+                    buffer.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    data = buffer.toByteArray();
+                    size = data.length;
+                }
+            };
+        }
+
+        file = Files.createTempFile("upload-", ".part");
+        OutputStream out = Files.newOutputStream(file);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                size += len;
+            }
+        };
+    }
+
+    /** Replaces the client-declared type with the one detected from the content. */
+    void setDetectedContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    boolean isFormField() {
+        return submittedFileName == null;
+    }
+
+    String getValue(Charset charset) {
+        return data == null ? "" : new String(data, charset);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return file != null ? Files.newInputStream(file) : new ByteArrayInputStream(data == null ? new byte[0] : data);
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getSubmittedFileName() {
+        return submittedFileName;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void write(String fileName) throws IOException {
+        if (file != null) {
+            Files.copy(file, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.write(Paths.get(fileName), data == null ? new byte[0] : data);
+        }
+    }
+
+    @Override
+    public void delete() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        String value = headers.get(name);
+        return value == null ? Collections.emptyList() : Collections.singletonList(value);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return new ArrayList<>(headers.keySet());
+    }
+}
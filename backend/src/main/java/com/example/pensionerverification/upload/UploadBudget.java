@@ -0,0 +1,77 @@
+package com.example.pensionerverification.upload;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global budget of upload bytes that may be in flight at once. Each upload
+ * reserves its declared size before its body is read and gives it back when the
+ * request completes, bounding spool disk and heap regardless of thread count.
+ */
+@Component
+public class UploadBudget {
+
+    private final long capacity;
+
+    // Guarded by "this"
+    private long reserved;
+    private long peakReserved;
+    private int inFlight;
+    private long waitedTotal;
+    private long rejectedTotal;
+
+    public UploadBudget(@Value("${pensioner.upload.budget.max-in-flight:512MB}") DataSize capacity) {
+        this.capacity = capacity.toBytes();
+    }
+
+    /**
+     * Reserves {@code bytes}, waiting up to {@code timeoutMillis} for other uploads
+     * to finish. Returns false if the budget didn't free up in time.
+     */
+    public synchronized boolean reserve(long bytes, long timeoutMillis) throws InterruptedException {
+        if (bytes > capacity) {
+            rejectedTotal++;
+            return false;
+        }
+
+        if (reserved + bytes > capacity) {
+            waitedTotal++;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (reserved + bytes > capacity) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejectedTotal++;
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+
+        reserved += bytes;
+        inFlight++;
+        peakReserved = Math.max(peakReserved, reserved);
+        return true;
+    }
+
+    public synchronized void release(long bytes) {
+        reserved -= bytes;
+        inFlight--;
+        notifyAll();
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("capacityBytes", capacity);
+        values.put("reservedBytes", reserved);
+        values.put("inFlightUploads", inFlight);
+        values.put("peakReservedBytes", peakReserved);
+        values.put("waitedTotal", waitedTotal);
+        values.put("rejectedTotal", rejectedTotal);
+        return values;
+    }
+}
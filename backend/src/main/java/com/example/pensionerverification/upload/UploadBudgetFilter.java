@@ -0,0 +1,78 @@
+package com.example.pensionerverification.upload;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Admits multipart uploads against the global {@link UploadBudget} before any of
+ * their body is read. Requests that can't get a reservation within the wait
+ * timeout are answered with 503 and a Retry-After hint.
+ *
+ * Runs ahead of {@link UploadValidationFilter}, which starts reading the body.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 100)
+public class UploadBudgetFilter extends OncePerRequestFilter {
+
+    @Value("${pensioner.upload.budget.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pensioner.upload.budget.wait-timeout-ms:2000}")
+    private long waitTimeoutMillis;
+
+    @Value("${spring.servlet.multipart.max-request-size:50MB}")
+    private DataSize maxRequestSize;
+
+    private final UploadBudget uploadBudget;
+
+    public UploadBudgetFilter(UploadBudget uploadBudget) {
+        this.uploadBudget = uploadBudget;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || request.getContentType() == null
+                || !request.getContentType().toLowerCase(Locale.ROOT).startsWith("multipart/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Chunked uploads have no declared length; assume the worst case the server accepts
+        long declared = request.getContentLengthLong();
+        long bytes = declared >= 0 ? Math.min(declared, maxRequestSize.toBytes()) : maxRequestSize.toBytes();
+
+        boolean admitted;
+        try {
+            admitted = uploadBudget.reserve(bytes, waitTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+
+        if (!admitted) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+            UploadErrorResponses.write(request, response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Server is busy processing other uploads. Please try again shortly.");
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            uploadBudget.release(bytes);
+        }
+    }
+}
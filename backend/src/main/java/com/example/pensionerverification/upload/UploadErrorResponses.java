@@ -0,0 +1,42 @@
+package com.example.pensionerverification.upload;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes error responses for uploads refused in a filter, before the request
+ * reaches Spring MVC (and therefore its CORS handling).
+ */
+final class UploadErrorResponses {
+
+    private static final String ALLOWED_ORIGIN = "http://localhost:4200";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private UploadErrorResponses() {
+    }
+
+    static void write(HttpServletRequest request, HttpServletResponse response, int status, String message)
+            throws IOException {
+        // The body is left unread, so the connection can't be reused
+        response.setStatus(status);
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        if (ALLOWED_ORIGIN.equals(request.getHeader(HttpHeaders.ORIGIN))) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, ALLOWED_ORIGIN);
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("message", message);
+        body.put("timestamp", System.currentTimeMillis());
+        OBJECT_MAPPER.writeValue(response.getOutputStream(), body);
+    }
+}
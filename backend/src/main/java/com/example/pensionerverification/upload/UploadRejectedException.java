@@ -0,0 +1,22 @@
+package com.example.pensionerverification.upload;
+
+import java.io.IOException;
+
+/**
+ * Thrown while an upload is still streaming in, to abort the request before the
+ * rest of the body is read. Extends IOException so it can be raised from inside
+ * OutputStream.write().
+ */
+public class UploadRejectedException extends IOException {
+
+    private final int status;
+
+    public UploadRejectedException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
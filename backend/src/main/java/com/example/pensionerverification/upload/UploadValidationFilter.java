@@ -0,0 +1,371 @@
+package com.example.pensionerverification.upload;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.Part;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses multipart uploads for the picture and video endpoints itself instead of
+ * letting the container spool the whole body first. The guarded file part is
+ * sniffed as its bytes arrive: wrong magic bytes, an oversized part or a header
+ * announcing a too long / too large video aborts the request immediately.
+ *
+ * Accepted parts are handed on as regular servlet {@link Part}s, so controllers
+ * keep receiving MultipartFile arguments. The detected content type replaces the
+ * one declared by the client.
+ */
+@Component
+public class UploadValidationFilter extends OncePerRequestFilter {
+
+    private static final List<GuardedUpload> GUARDED_UPLOADS = List.of(
+            new GuardedUpload("/api/verify/*", "video", MediaProbe.Kind.VIDEO),
+            new GuardedUpload("/api/upload-profile-picture/*", "image", MediaProbe.Kind.IMAGE),
+            new GuardedUpload("/api/users/register", "profilePicture", MediaProbe.Kind.IMAGE));
+
+    @Value("${pensioner.upload.validation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${pensioner.upload.sniff-bytes:65536}")
+    private int sniffBytes;
+
+    @Value("${spring.servlet.multipart.max-request-size:50MB}")
+    private DataSize maxRequestSize;
+
+    @Value("${pensioner.upload.video.max-size:50MB}")
+    private DataSize maxVideoSize;
+
+    // Video limits of 0 are off: the size cap already bounds what a clip can cost
+    @Value("${pensioner.upload.video.max-duration-seconds:0}")
+    private double maxVideoDurationSeconds;
+
+    @Value("${pensioner.upload.video.max-width:0}")
+    private int maxVideoWidth;
+
+    @Value("${pensioner.upload.video.max-height:0}")
+    private int maxVideoHeight;
+
+    @Value("${pensioner.upload.image.max-size:10MB}")
+    private DataSize maxImageSize;
+
+    @Value("${pensioner.upload.image.max-width:8000}")
+    private int maxImageWidth;
+
+    @Value("${pensioner.upload.image.max-height:8000}")
+    private int maxImageHeight;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private record GuardedUpload(String pattern, String partName, MediaProbe.Kind kind) {
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod()) || request.getContentType() == null
+                || !request.getContentType().toLowerCase(Locale.ROOT).startsWith("multipart/form-data")
+                || findGuardedUpload(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        GuardedUpload guarded = findGuardedUpload(request);
+
+        // Declared length alone is enough to refuse before reading a single byte
+        if (request.getContentLengthLong() > maxRequestSize.toBytes()) {
+            reject(request, response, new UploadRejectedException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Upload too large. Maximum request size is " + maxRequestSize.toMegabytes() + "MB."));
+            return;
+        }
+
+        String boundary;
+        try {
+            boundary = MediaType.parseMediaType(request.getContentType()).getParameter("boundary");
+        } catch (IllegalArgumentException e) {
+            boundary = null;
+        }
+        if (boundary == null || boundary.isEmpty()) {
+            reject(request, response, new UploadRejectedException(HttpServletResponse.SC_BAD_REQUEST,
+                    "Malformed upload: missing multipart boundary"));
+            return;
+        }
+        if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+
+        List<SpooledPart> parts = new ArrayList<>();
+        try {
+            MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary,
+                    maxRequestSize.toBytes());
+            while (reader.nextPart()) {
+                Map<String, String> headers = reader.getHeaders();
+                ContentDisposition disposition = ContentDisposition.parse(
+                        headers.getOrDefault(HttpHeaders.CONTENT_DISPOSITION, "form-data"));
+                SpooledPart part = new SpooledPart(disposition.getName(), disposition.getFilename(), headers);
+                parts.add(part);
+
+                OutputStream sink = part.open();
+                if (guarded.partName().equals(part.getName()) && !part.isFormField()) {
+                    sink = new SniffingOutputStream(sink, part, guarded.kind());
+                }
+                try (OutputStream out = sink) {
+                    reader.readPartBody(out);
+                }
+            }
+        } catch (UploadRejectedException e) {
+            deleteAll(parts);
+            reject(request, response, e);
+            return;
+        } catch (IOException | RuntimeException e) {
+            deleteAll(parts);
+            throw e;
+        }
+
+        try {
+            chain.doFilter(new SpooledMultipartRequest(request, parts), response);
+        } finally {
+            deleteAll(parts);
+        }
+    }
+
+    private GuardedUpload findGuardedUpload(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (GuardedUpload guarded : GUARDED_UPLOADS) {
+            if (pathMatcher.match(guarded.pattern(), path)) {
+                return guarded;
+            }
+        }
+        return null;
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, UploadRejectedException e)
+            throws IOException {
+        UploadErrorResponses.write(request, response, e.getStatus(), e.getMessage());
+    }
+
+    private void deleteAll(List<SpooledPart> parts) {
+        for (SpooledPart part : parts) {
+            try {
+                part.delete();
+            } catch (IOException e) {
+                System.err.println("Failed to cleanup spooled upload: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks the magic bytes as soon as enough have arrived, then probes the
+     * container header once the sniff window is full (or the part ends).
+     */
+    private class SniffingOutputStream extends FilterOutputStream {
+
+        private final SpooledPart part;
+        private final MediaProbe.Kind expected;
+        private final long maxBytes;
+        private final byte[] window;
+        private int buffered;
+        private long total;
+        private MediaProbe probe;
+        private boolean probed;
+
+        SniffingOutputStream(OutputStream out, SpooledPart part, MediaProbe.Kind expected) {
+            super(out);
+            this.part = part;
+            this.expected = expected;
+            this.maxBytes = expected == MediaProbe.Kind.VIDEO ? maxVideoSize.toBytes() : maxImageSize.toBytes();
+            this.window = new byte[Math.max(sniffBytes, MediaProbe.MAGIC_BYTES)];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            total += len;
+            if (total > maxBytes) {
+                throw new UploadRejectedException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                        describe() + " file too large. Maximum size is " + (maxBytes / (1024 * 1024)) + "MB.");
+            }
+
+            if (!probed) {
+                int n = Math.min(len, window.length - buffered);
+                System.arraycopy(b, off, window, buffered, n);
+                buffered += n;
+                if (probe == null && buffered >= MediaProbe.MAGIC_BYTES) {
+                    identify();
+                }
+                if (buffered == window.length) {
+                    probeHeader();
+                }
+            }
+
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            // Empty parts are left to the controllers' own "no file provided" checks
+            if (total > 0 && !probed) {
+                if (probe == null) {
+                    identify();
+                }
+                probeHeader();
+            }
+        }
+
+        private void identify() throws UploadRejectedException {
+            probe = MediaProbe.identify(window, buffered);
+            if (probe == null || probe.getKind() != expected) {
+                throw new UploadRejectedException(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                        expected == MediaProbe.Kind.VIDEO
+                                ? "Invalid file type. Please upload an MP4, WebM or MOV video."
+                                : "Invalid file type. Please upload a JPEG or PNG image.");
+            }
+            part.setDetectedContentType(probe.getContentType());
+        }
+
+        // Only the limits actually configured; 0 means unlimited
+        private String describeLimit(int maxWidth, int maxHeight) {
+            if (maxWidth > 0 && maxHeight > 0) {
+                return "of " + maxWidth + "x" + maxHeight;
+            }
+            return maxWidth > 0 ? "width of " + maxWidth : "height of " + maxHeight;
+        }
+
+        private void probeHeader() throws UploadRejectedException {
+            probed = true;
+            probe.probe(window, buffered);
+
+            int maxWidth = expected == MediaProbe.Kind.VIDEO ? maxVideoWidth : maxImageWidth;
+            int maxHeight = expected == MediaProbe.Kind.VIDEO ? maxVideoHeight : maxImageHeight;
+            if (probe.getWidth() != null && probe.getHeight() != null
+                    && ((maxWidth > 0 && probe.getWidth() > maxWidth)
+                            || (maxHeight > 0 && probe.getHeight() > maxHeight))) {
+                throw new UploadRejectedException(HttpServletResponse.SC_BAD_REQUEST,
+                        describe() + " resolution " + probe.getWidth() + "x" + probe.getHeight()
+                                + " exceeds the maximum " + describeLimit(maxWidth, maxHeight) + ".");
+            }
+            if (expected == MediaProbe.Kind.VIDEO && maxVideoDurationSeconds > 0
+                    && probe.getDurationSeconds() != null && probe.getDurationSeconds() > maxVideoDurationSeconds) {
+                throw new UploadRejectedException(HttpServletResponse.SC_BAD_REQUEST,
+                        String.format("Video too long (%.1fs). Maximum duration is %.0f seconds.",
+                                probe.getDurationSeconds(), maxVideoDurationSeconds));
+            }
+        }
+
+        private String describe() {
+            return expected == MediaProbe.Kind.VIDEO ? "Video" : "Image";
+        }
+    }
+
+    /** Serves the already parsed parts and form fields to Spring's multipart resolver. */
+    private static class SpooledMultipartRequest extends HttpServletRequestWrapper {
+
+        private final List<SpooledPart> parts;
+        private final Map<String, String[]> parameters = new LinkedHashMap<>();
+
+        SpooledMultipartRequest(HttpServletRequest request, List<SpooledPart> parts) {
+            super(request);
+            this.parts = parts;
+
+            // Don't touch the wrapped request's parameters: the container would try to parse the consumed body
+            Map<String, List<String>> values = new LinkedHashMap<>();
+            String query = request.getQueryString();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    if (pair.isEmpty()) {
+                        continue;
+                    }
+                    int eq = pair.indexOf('=');
+                    String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                    String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                    values.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+                }
+            }
+            for (SpooledPart part : parts) {
+                if (part.isFormField() && part.getName() != null) {
+                    values.computeIfAbsent(part.getName(), k -> new ArrayList<>()).add(part.getValue(charsetOf(part)));
+                }
+            }
+            values.forEach((key, list) -> parameters.put(key, list.toArray(new String[0])));
+        }
+
+        private static Charset charsetOf(SpooledPart part) {
+            if (part.getContentType() != null) {
+                try {
+                    Charset charset = MediaType.parseMediaType(part.getContentType()).getCharset();
+                    if (charset != null) {
+                        return charset;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Unparseable or unsupported charset, fall back to UTF-8
+                }
+            }
+            return StandardCharsets.UTF_8;
+        }
+
+        @Override
+        public Collection<Part> getParts() {
+            return new ArrayList<>(parts);
+        }
+
+        @Override
+        public Part getPart(String name) {
+            for (SpooledPart part : parts) {
+                if (name.equals(part.getName())) {
+                    return part;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String getParameter(String name) {
+            String[] values = parameters.get(name);
+            return values == null || values.length == 0 ? null : values[0];
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return Collections.unmodifiableMap(parameters);
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+    }
+}
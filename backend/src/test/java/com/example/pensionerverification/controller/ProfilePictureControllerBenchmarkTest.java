@@ -0,0 +1,185 @@
+package com.example.pensionerverification.controller;
+
+import com.example.pensionerverification.model.User;
+import com.example.pensionerverification.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Serves a large profile picture through the real Tomcat connector and
+ * compares throughput with the previous approach of reading the whole file
+ * into a byte[] per request. Also checks the bytes of full and ranged
+ * responses on both the sendfile path and the small-file copy path.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Import(ProfilePictureControllerBenchmarkTest.ReadAllBytesConfiguration.class)
+class ProfilePictureControllerBenchmarkTest {
+
+    private static final int LARGE_SIZE = 2 * 1024 * 1024;
+    private static final int SMALL_SIZE = 16 * 1024;
+    private static final int WARMUP_REQUESTS = 20;
+    private static final int MEASURED_REQUESTS = 100;
+
+    // Registered only through @Import so the benchmark endpoint never leaks into other test contexts
+    @TestConfiguration
+    static class ReadAllBytesConfiguration {
+
+        @Bean
+        ReadAllBytesController readAllBytesController() {
+            return new ReadAllBytesController();
+        }
+    }
+
+    @RestController
+    static class ReadAllBytesController {
+
+        @Value("${upload.dir}")
+        private String uploadDir;
+
+        @GetMapping("/benchmark/read-all-bytes/{fileName}")
+        public ResponseEntity<byte[]> readAllBytes(@PathVariable String fileName) throws IOException {
+            byte[] body = Files.readAllBytes(Paths.get(uploadDir, fileName));
+            return ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(body);
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${upload.dir}")
+    private String uploadDir;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private byte[] largePicture;
+    private byte[] smallPicture;
+
+    @BeforeEach
+    void storePictures() throws IOException {
+        Random random = new Random(28);
+        largePicture = new byte[LARGE_SIZE];
+        random.nextBytes(largePicture);
+        smallPicture = new byte[SMALL_SIZE];
+        random.nextBytes(smallPicture);
+
+        Files.createDirectories(Paths.get(uploadDir));
+        Files.write(Paths.get(uploadDir, "benchmark-large.jpg"), largePicture);
+        Files.write(Paths.get(uploadDir, "benchmark-small.jpg"), smallPicture);
+        saveUser("benchmark-large", "benchmark-large.jpg");
+        saveUser("benchmark-small", "benchmark-small.jpg");
+    }
+
+    private void saveUser(String username, String picture) {
+        User user = userRepository.findByUsername(username).orElseGet(User::new);
+        user.setUsername(username);
+        user.setPassword("password");
+        user.setProfilePicturePath(picture);
+        userRepository.save(user);
+    }
+
+    @Test
+    void servesFullAndRangedBytes() throws Exception {
+        for (String username : new String[] { "benchmark-large", "benchmark-small" }) {
+            byte[] expected = username.endsWith("large") ? largePicture : smallPicture;
+
+            HttpResponse<byte[]> full = get("/api/users/" + username + "/profile-picture", null);
+            assertEquals(200, full.statusCode());
+            assertArrayEquals(expected, full.body());
+
+            HttpResponse<byte[]> ranged = get("/api/users/" + username + "/profile-picture", "bytes=1000-8999");
+            assertEquals(206, ranged.statusCode());
+            assertEquals("bytes 1000-8999/" + expected.length,
+                    ranged.headers().firstValue("Content-Range").orElse(null));
+            assertArrayEquals(Arrays.copyOfRange(expected, 1000, 9000), ranged.body());
+        }
+    }
+
+    @Test
+    void ifRangeMatchesEntityTagOrLastModifiedDate() throws Exception {
+        String path = "/api/users/benchmark-small/profile-picture";
+        HttpResponse<byte[]> full = get(path, null);
+        String etag = full.headers().firstValue("ETag").orElseThrow();
+        String lastModified = full.headers().firstValue("Last-Modified").orElseThrow();
+
+        assertEquals(206, get(path, "bytes=0-99", etag).statusCode());
+        assertEquals(206, get(path, "bytes=0-99", lastModified).statusCode());
+
+        // A changed picture: the client's validator no longer matches, so the whole file comes back
+        HttpResponse<byte[]> staleTag = get(path, "bytes=0-99", "\"0-0\"");
+        assertEquals(200, staleTag.statusCode());
+        assertArrayEquals(smallPicture, staleTag.body());
+        assertEquals(200, get(path, "bytes=0-99", "Thu, 01 Jan 1970 00:00:00 GMT").statusCode());
+        assertEquals(200, get(path, "bytes=0-99", "not a validator").statusCode());
+    }
+
+    @Test
+    void outperformsReadingWholeFileIntoMemory() throws Exception {
+        double served = throughput("/api/users/benchmark-large/profile-picture");
+        double readAllBytes = throughput("/benchmark/read-all-bytes/benchmark-large.jpg");
+
+        System.out.printf("profile picture (%d KB): endpoint %.1f MB/s, Files.readAllBytes %.1f MB/s%n",
+                LARGE_SIZE / 1024, served, readAllBytes);
+        // Loose bound: a guard against regressions, not a claim about any particular machine
+        assertTrue(served >= readAllBytes * 0.5,
+                "endpoint " + served + " MB/s vs readAllBytes " + readAllBytes + " MB/s");
+    }
+
+    private double throughput(String path) throws Exception {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            assertEquals(LARGE_SIZE, get(path, null).body().length);
+        }
+
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_REQUESTS; i++) {
+            bytes += get(path, null).body().length;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return bytes / seconds / (1024 * 1024);
+    }
+
+    private HttpResponse<byte[]> get(String path, String range) throws Exception {
+        return get(path, range, null);
+    }
+
+    private HttpResponse<byte[]> get(String path, String range, String ifRange) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+        if (range != null) {
+            request.header("Range", range);
+        }
+        if (ifRange != null) {
+            request.header("If-Range", ifRange);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
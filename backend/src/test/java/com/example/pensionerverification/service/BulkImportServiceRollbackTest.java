@@ -0,0 +1,70 @@
+package com.example.pensionerverification.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A batch whose insert fails must not leave the photos it already copied
+ * in the upload directory.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class BulkImportServiceRollbackTest {
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Value("${upload.dir}")
+    private String uploadDir;
+
+    @Value("${temp.dir}")
+    private String tempDir;
+
+    @Test
+    void failedBatchDeletesCopiedPhotos() throws IOException {
+        Path work = Files.createDirectories(Paths.get(tempDir, "rollback-test"));
+        Path csv = work.resolve("users.csv");
+        // Longer than the username column, so the batch insert fails after the photos are written
+        Files.writeString(csv, "username,password,photo\n"
+                + "rollback-ok,secret,ok.jpg\n"
+                + "x".repeat(300) + ",secret,too-long.jpg\n", StandardCharsets.UTF_8);
+
+        Path zip = work.resolve("photos.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (String name : new String[] { "ok.jpg", "too-long.jpg" }) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(new byte[1024]);
+                out.closeEntry();
+            }
+        }
+
+        assertThrows(IOException.class, () -> bulkImportService.importUsers(csv, zip, "rollback-test"));
+
+        assertEquals(0, countPhotos("ok.jpg") + countPhotos("too-long.jpg"));
+    }
+
+    private long countPhotos(String baseName) throws IOException {
+        Path dir = Paths.get(uploadDir);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith("_" + baseName)).count();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.pensionerverification.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BulkImportServiceTest {
+
+    @Test
+    void splitsPlainFields() {
+        assertEquals(List.of("alice", "secret", "alice.jpg"), BulkImportService.parseCsvLine("alice,secret,alice.jpg"));
+    }
+
+    @Test
+    void keepsCommasAndQuotesInsideQuotedFields() {
+        assertEquals(List.of("bob", "pa,ss\"word", "photos/bob.jpg"),
+                BulkImportService.parseCsvLine("bob,\"pa,ss\"\"word\",\"photos/bob.jpg\""));
+    }
+
+    @Test
+    void keepsSurroundingSpaces() {
+        assertEquals(List.of("carol", " secret ", "c.jpg"), BulkImportService.parseCsvLine("carol, secret ,c.jpg"));
+        assertEquals(List.of("carol", " secret ", "c.jpg"), BulkImportService.parseCsvLine("carol,\" secret \",c.jpg"));
+    }
+
+    @Test
+    void keepsEmptyFields() {
+        assertEquals(List.of("dave", "", ""), BulkImportService.parseCsvLine("dave,,"));
+        assertEquals(List.of("", "x", ""), BulkImportService.parseCsvLine("\"\",x,"));
+    }
+
+    @Test
+    void rejectsMalformedQuoting() {
+        assertNull(BulkImportService.parseCsvLine("erin,\"unterminated,e.jpg"));
+        assertNull(BulkImportService.parseCsvLine("erin,\"quoted\"trailing,e.jpg"));
+        assertNull(BulkImportService.parseCsvLine("erin,half\"quoted,e.jpg"));
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.pensionerverification.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Backfill and index loading against an in-memory database.
+ */
+class DuplicatePictureServiceTest {
+
+    private Path uploads;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private Runnable beforeResolve;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        uploads = Files.createTempDirectory("duplicate-pictures");
+        beforeResolve = null;
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:duplicates-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void deleteUploads() throws IOException {
+        try (Stream<Path> files = Files.walk(uploads)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void backfillFlagsCopiesWithinTheSamePage() throws IOException {
+        createTable();
+        writePicture("original.png", 0);
+        writePicture("copy.png", 0);
+        writePicture("other.png", 7);
+        insertUser(1, "original.png");
+        insertUser(2, "copy.png");
+        insertUser(3, "other.png");
+
+        DuplicatePictureService service = service();
+        service.loadAndBackfill();
+
+        assertEquals(0, count("profile_picture_hash IS NULL"));
+        assertEquals(1L, duplicateOf(2));
+        assertNull(duplicateOf(1));
+        assertNull(duplicateOf(3));
+        assertEquals(3, service.snapshot().get("indexedPictures"));
+        assertEquals(1L, service.snapshot().get("flagged"));
+    }
+
+    @Test
+    void pictureReplacedDuringTheBackfillKeepsItsOwnHash() throws IOException {
+        createTable();
+        writePicture("old.png", 0);
+        writePicture("other.png", 7);
+        insertUser(1, "old.png");
+        insertUser(2, "other.png");
+
+        // The user saves a new picture, already hashed, after the page was read
+        beforeResolve = () -> jdbcTemplate.update(
+                "UPDATE users SET profile_picture_path = 'new.png', profile_picture_hash = 42 WHERE id = 1");
+
+        DuplicatePictureService service = service();
+        service.loadAndBackfill();
+
+        assertEquals(42L, jdbcTemplate.queryForObject(
+                "SELECT profile_picture_hash FROM users WHERE id = 1", Long.class));
+        assertEquals(0, count("profile_picture_hash IS NULL"));
+        // Only the row that was actually written; the old picture's hash stays out of the index
+        assertEquals(1, service.snapshot().get("indexedPictures"));
+    }
+
+    @Test
+    void failedLoadIsRetriedOnTheNextRun() throws IOException {
+        DuplicatePictureService service = service();
+
+        // No users table yet
+        service.loadAndBackfill();
+        assertEquals(false, service.snapshot().get("loaded"));
+        assertNotNull(service.snapshot().get("loadError"));
+
+        createTable();
+        writePicture("me.png", 3);
+        insertUser(1, "me.png");
+        jdbcTemplate.update("INSERT INTO users (id, username, profile_picture_path, profile_picture_hash) "
+                + "VALUES (2, 'hashed', 'gone.png', 5)");
+
+        service.loadAndBackfill();
+        Map<String, Object> snapshot = service.snapshot();
+        assertEquals(true, snapshot.get("loaded"));
+        assertNull(snapshot.get("loadError"));
+        assertEquals(2, snapshot.get("indexedPictures"));
+        assertEquals(0, count("profile_picture_hash IS NULL"));
+    }
+
+    private DuplicatePictureService service() {
+        ProfilePictureService profilePictureService = new ProfilePictureService() {
+            @Override
+            public Path resolveProfilePicture(String storedPath) {
+                if (beforeResolve != null) {
+                    Runnable hook = beforeResolve;
+                    beforeResolve = null;
+                    hook.run();
+                }
+                return super.resolveProfilePicture(storedPath);
+            }
+        };
+        ReflectionTestUtils.setField(profilePictureService, "uploadDir", uploads.toString());
+
+        DuplicatePictureService service = new DuplicatePictureService(jdbcTemplate, transactionTemplate,
+                profilePictureService);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxDistance", 6);
+        return service;
+    }
+
+    private void createTable() {
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(255), "
+                + "profile_picture_path VARCHAR(255), profile_picture_hash BIGINT, duplicate_picture_of BIGINT)");
+    }
+
+    private void insertUser(long id, String picture) {
+        jdbcTemplate.update("INSERT INTO users (id, username, profile_picture_path) VALUES (?, ?, ?)",
+                id, "pensioner" + id, picture);
+    }
+
+    private Long duplicateOf(long id) {
+        return jdbcTemplate.queryForObject("SELECT duplicate_picture_of FROM users WHERE id = ?", Long.class, id);
+    }
+
+    private int count(String condition) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE " + condition, Integer.class);
+    }
+
+    // Diagonal stripes; different periods give hashes far apart
+    private void writePicture(String name, int variant) throws IOException {
+        BufferedImage image = new BufferedImage(90, 80, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int gray = ((x * (variant + 1) + y * (3 + variant)) * 17) % 256;
+                image.setRGB(x, y, gray << 16 | gray << 8 | gray);
+            }
+        }
+        ImageIO.write(image, "png", uploads.resolve(name).toFile());
+    }
+}
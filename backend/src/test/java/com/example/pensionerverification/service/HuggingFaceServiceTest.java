@@ -0,0 +1,266 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.model.User;
+import com.example.pensionerverification.service.HuggingFaceService.LivenessVerificationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withBadRequest;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Progressive verification against a mocked upstream: which answers to the
+ * sample are trusted, and when the full clip is sent after all.
+ */
+class HuggingFaceServiceTest {
+
+    private static final String API_URL = "http://upstream.test";
+
+    private Path dir;
+    private MockRestServiceServer server;
+    private HuggingFaceService service;
+    private ReferenceEmbeddingService referenceEmbeddingService;
+    private User user;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("liveness");
+        Path uploads = Files.createDirectories(dir.resolve("uploads"));
+        Files.write(uploads.resolve("me.jpg"), new byte[2048]);
+        user = new User();
+        user.setUsername("pensioner1");
+        user.setProfilePicturePath("me.jpg");
+
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        UpstreamMetrics upstreamMetrics = new UpstreamMetrics();
+
+        service = new HuggingFaceService();
+        ReflectionTestUtils.setField(service, "huggingFaceApiUrl", API_URL);
+        ReflectionTestUtils.setField(service, "huggingFaceToken", "");
+        ReflectionTestUtils.setField(service, "uploadDir", uploads.toString());
+        ReflectionTestUtils.setField(service, "tempDir", dir.resolve("temp").toString());
+        ReflectionTestUtils.setField(service, "confidenceThreshold", 0.7);
+        ReflectionTestUtils.setField(service, "progressiveEnabled", true);
+        ReflectionTestUtils.setField(service, "sampleFraction", 0.4);
+        ReflectionTestUtils.setField(service, "decisionMargin", 0.15);
+        ReflectionTestUtils.setField(service, "videoPrefixSampler", new VideoPrefixSampler());
+        ReflectionTestUtils.setField(service, "upstreamMetrics", upstreamMetrics);
+        // Embeddings stay disabled unless a test turns them on, so every pass sends the picture
+        referenceEmbeddingService = new ReferenceEmbeddingService(null, null, upstreamMetrics, restTemplate);
+        ReflectionTestUtils.setField(service, "referenceEmbeddingService", referenceEmbeddingService);
+        ReflectionTestUtils.setField(service, "restTemplate", restTemplate);
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void confidentSampleIsAcceptedWithoutTheFullClip() throws IOException {
+        expectPredict(answer(true, 0.93));
+
+        LivenessVerificationResult result = verify(VideoPrefixSamplerTest.fragmentedMp4(10, false));
+
+        server.verify();
+        assertTrue(result.isVerified());
+        assertEquals("accepted-on-sample", result.getDetails().get("progressiveDecision"));
+        assertEquals(List.of("sample"), passes(result));
+        // Neither the clip nor its sample is left behind
+        try (Stream<Path> files = Files.list(dir.resolve("temp"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void clearlyFailedSampleIsRejectedWithoutTheFullClip() throws IOException {
+        expectPredict(answer(false, 0.2));
+
+        LivenessVerificationResult result = verify(VideoPrefixSamplerTest.webm(8));
+
+        server.verify();
+        assertFalse(result.isVerified());
+        assertEquals("rejected-on-sample", result.getDetails().get("progressiveDecision"));
+        assertEquals(List.of("sample"), passes(result));
+    }
+
+    @Test
+    void sampleInsideTheMarginEscalates() throws IOException {
+        // Close to the threshold either way, or a confidence that contradicts the verdict
+        Object[][] samples = { { true, 0.8 }, { false, 0.6 }, { true, 0.5 }, { false, 0.9 } };
+        for (Object[] sample : samples) {
+            server.reset();
+            expectPredict(answer((Boolean) sample[0], (Double) sample[1]));
+            expectPredict(answer(true, 0.91));
+
+            LivenessVerificationResult result = verify(VideoPrefixSamplerTest.fragmentedMp4(10, false));
+
+            server.verify();
+            String at = sample[0] + " at " + sample[1];
+            assertEquals("escalated", result.getDetails().get("progressiveDecision"), at);
+            assertEquals(List.of("sample", "full"), passes(result), at);
+            assertTrue(result.isVerified(), at);
+            assertEquals(0.91, result.getConfidence(), 1e-9);
+        }
+    }
+
+    @Test
+    void sampleWithoutConfidenceEscalates() throws IOException {
+        expectPredict(answer(false, null));
+        expectPredict(answer(true, 0.88));
+
+        LivenessVerificationResult result = verify(VideoPrefixSamplerTest.fragmentedMp4(10, false));
+
+        server.verify();
+        assertEquals("escalated", result.getDetails().get("progressiveDecision"));
+        assertTrue(result.isVerified());
+    }
+
+    @Test
+    void failedSamplePassEscalates() throws IOException {
+        server.expect(requestTo(API_URL + "/predict")).andRespond(withServerError());
+        expectPredict(answer(true, 0.88));
+
+        LivenessVerificationResult result = verify(VideoPrefixSamplerTest.fragmentedMp4(10, false));
+
+        server.verify();
+        assertEquals("escalated", result.getDetails().get("progressiveDecision"));
+        assertEquals(List.of("full"), passes(result));
+    }
+
+    @Test
+    void clipThatCannotBeCutIsSentWhole() throws IOException {
+        expectPredict(answer(true, 0.75));
+
+        LivenessVerificationResult result = verify(regularMp4());
+
+        server.verify();
+        assertEquals("full-only", result.getDetails().get("progressiveDecision"));
+        assertEquals(List.of("full"), passes(result));
+        assertTrue(result.isVerified());
+    }
+
+    @Test
+    void rejectedEmbeddingIsRetriedWithThePicture() throws IOException {
+        useEmbedding();
+        server.expect(requestTo(API_URL + "/predict")).andRespond(withBadRequest());
+        expectPredict(answer(true, 0.9));
+
+        LivenessVerificationResult result = verify(regularMp4());
+
+        server.verify();
+        assertTrue(result.isVerified());
+        assertEquals(List.of("picture"), referencesSent(result));
+        assertEquals(0L, referenceEmbeddingService.snapshot().get("usedForVerification"));
+        assertEquals(1L, referenceEmbeddingService.snapshot().get("pictureFallbacks"));
+    }
+
+    @Test
+    void serverErrorWithTheEmbeddingIsNotRetriedWithThePicture() {
+        useEmbedding();
+        server.expect(requestTo(API_URL + "/predict")).andRespond(withServerError());
+
+        assertThrows(IOException.class, () -> verify(regularMp4()));
+
+        server.verify();
+        assertEquals(0L, referenceEmbeddingService.snapshot().get("usedForVerification"));
+        assertEquals(0L, referenceEmbeddingService.snapshot().get("pictureFallbacks"));
+    }
+
+    @Test
+    void onlyTheEmbeddingModelVersionRetiresStoredEmbeddings() throws IOException {
+        useEmbedding();
+        // The liveness model's version says nothing about the embedding
+        expectPredict("[\"VERIFIED - GENUINE PERSON\", {\"is_live\": true, \"confidence\": 0.9, "
+                + "\"model_version\": \"liveness-3\"}]");
+        expectPredict("[\"VERIFIED - GENUINE PERSON\", {\"is_live\": true, \"confidence\": 0.9, "
+                + "\"embedding_model_version\": \"arcface-2\"}]");
+        expectPredict(answer(true, 0.9));
+
+        byte[] video = regularMp4();
+        assertEquals(List.of("embedding"), referencesSent(verify(video)));
+        assertEquals(List.of("embedding"), referencesSent(verify(video)));
+        assertEquals(List.of("picture"), referencesSent(verify(video)));
+
+        server.verify();
+        assertEquals("arcface-2", referenceEmbeddingService.snapshot().get("modelVersion"));
+        assertEquals(2L, referenceEmbeddingService.snapshot().get("usedForVerification"));
+    }
+
+    // A stored arcface-1 embedding for the user
+    private void useEmbedding() {
+        ReflectionTestUtils.setField(referenceEmbeddingService, "enabled", true);
+        user.setReferenceEmbedding(new byte[512]);
+        user.setEmbeddingModelVersion("arcface-1");
+    }
+
+    private LivenessVerificationResult verify(byte[] video) throws IOException {
+        return service.verifyLiveness(user, new MockMultipartFile("video", "clip.mp4", "video/mp4", video));
+    }
+
+    // Not fragmented, so there is no sample and the clip goes up in one pass
+    private static byte[] regularMp4() {
+        byte[] video = new byte[20_000];
+        System.arraycopy(new byte[] { 0, 0, 0, 16, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm' }, 0, video, 0, 12);
+        return video;
+    }
+
+    private void expectPredict(String body) {
+        server.expect(requestTo(API_URL + "/predict"))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess(body, MediaType.APPLICATION_JSON));
+    }
+
+    // Gradio's [markdown, details] answer
+    private static String answer(boolean verified, Double confidence) {
+        String markdown = verified ? "VERIFIED - GENUINE PERSON" : "VERIFICATION FAILED";
+        String details = "{\"is_live\": " + verified
+                + (confidence != null ? ", \"confidence\": " + confidence : "") + "}";
+        return "[\"" + markdown + "\", " + details + "]";
+    }
+
+    private static List<String> passes(LivenessVerificationResult result) {
+        return passInfo(result, "pass");
+    }
+
+    private static List<String> referencesSent(LivenessVerificationResult result) {
+        return passInfo(result, "referenceSent");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> passInfo(LivenessVerificationResult result, String key) {
+        List<String> values = new ArrayList<>();
+        for (Map<String, Object> pass : (List<Map<String, Object>>) result.getDetails().get("upstreamPasses")) {
+            values.add((String) pass.get(key));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.service.PictureHashIndex.Match;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PictureHashIndexTest {
+
+    private static final int PICTURES = 1_000_000;
+    private static final int MAX_DISTANCE = 6;
+
+    private static long[] hashes;
+    private static PictureHashIndex index;
+
+    @BeforeAll
+    static void fillIndex() {
+        Random random = new Random(42);
+        hashes = new long[PICTURES];
+        index = new PictureHashIndex();
+        for (int i = 0; i < PICTURES; i++) {
+            hashes[i] = random.nextLong();
+            index.add(i, hashes[i]);
+        }
+    }
+
+    @Test
+    void findsEveryStoredHashWithinMaxDistance() {
+        Random random = new Random(7);
+        for (int distance = 0; distance <= MAX_DISTANCE + 4; distance++) {
+            for (int i = 0; i < 200; i++) {
+                int userId = random.nextInt(PICTURES);
+                long query = flipBits(hashes[userId], distance, random);
+
+                Integer found = toMap(index.search(query, MAX_DISTANCE)).get((long) userId);
+                if (distance <= MAX_DISTANCE) {
+                    assertEquals(distance, found, "user " + userId + " at distance " + distance);
+                } else {
+                    assertNull(found, "user " + userId + " at distance " + distance);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesBruteForceScan() {
+        Random random = new Random(11);
+        for (int i = 0; i < 100; i++) {
+            // Half the queries sit near stored hashes, the rest anywhere
+            long query = i % 2 == 0 ? flipBits(hashes[random.nextInt(PICTURES)], random.nextInt(12), random)
+                    : random.nextLong();
+
+            Map<Long, Integer> expected = new HashMap<>();
+            for (int userId = 0; userId < PICTURES; userId++) {
+                int distance = Long.bitCount(hashes[userId] ^ query);
+                if (distance <= MAX_DISTANCE) {
+                    expected.put((long) userId, distance);
+                }
+            }
+
+            List<Match> matches = index.search(query, MAX_DISTANCE);
+            assertEquals(expected, toMap(matches));
+            for (int m = 1; m < matches.size(); m++) {
+                assertTrue(matches.get(m - 1).getDistance() <= matches.get(m).getDistance(), "closest first");
+            }
+        }
+    }
+
+    @Test
+    void removedPictureIsNotFound() {
+        PictureHashIndex small = new PictureHashIndex();
+        small.add(1, 0x0123_4567_89AB_CDEFL);
+        small.add(2, 0x0123_4567_89AB_CDEFL ^ 0b101);
+        assertEquals(2, small.size());
+
+        small.remove(1, 0x0123_4567_89AB_CDEFL);
+
+        assertEquals(1, small.size());
+        Map<Long, Integer> found = toMap(small.search(0x0123_4567_89AB_CDEFL, MAX_DISTANCE));
+        assertEquals(Map.of(2L, 2), found);
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        long mask = 0;
+        while (Long.bitCount(mask) < bits) {
+            mask |= 1L << random.nextInt(64);
+        }
+        return hash ^ mask;
+    }
+
+    private static Map<Long, Integer> toMap(List<Match> matches) {
+        Map<Long, Integer> result = new HashMap<>();
+        for (Match match : matches) {
+            result.put(match.getUserId(), match.getDistance());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.pensionerverification.service;
+
+import com.example.pensionerverification.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Embedding requests against a mocked upstream, stored in an in-memory database.
+ */
+class ReferenceEmbeddingServiceTest {
+
+    private static final String EMBED_URL = "http://upstream.test/embed";
+
+    private Path uploads;
+    private JdbcTemplate jdbcTemplate;
+    private MockRestServiceServer server;
+    private ReferenceEmbeddingService service;
+    private final AtomicInteger refreshQueries = new AtomicInteger();
+    private final CountDownLatch held = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile CountDownLatch drained;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        uploads = Files.createTempDirectory("embeddings");
+        Files.write(uploads.resolve("me.jpg"), new byte[2048]);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:embeddings-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public List<Map<String, Object>> queryForList(String sql, Object... args) {
+                refreshQueries.incrementAndGet();
+                return super.queryForList(sql, args);
+            }
+        };
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, profile_picture_path VARCHAR(255), "
+                + "reference_embedding VARBINARY(16384), embedding_model_version VARCHAR(255))");
+        jdbcTemplate.update("INSERT INTO users (id, profile_picture_path) VALUES (1, 'me.jpg')");
+
+        ProfilePictureService profilePictureService = new ProfilePictureService() {
+            @Override
+            public Path resolveProfilePicture(String storedPath) {
+                if ("hold".equals(storedPath)) {
+                    // Keeps the worker busy until the test lets it go
+                    held.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }
+                if ("drain".equals(storedPath)) {
+                    drained.countDown();
+                    return null;
+                }
+                return super.resolveProfilePicture(storedPath);
+            }
+        };
+        ReflectionTestUtils.setField(profilePictureService, "uploadDir", uploads.toString());
+
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        service = new ReferenceEmbeddingService(jdbcTemplate, profilePictureService, new UpstreamMetrics(),
+                restTemplate);
+        ReflectionTestUtils.setField(service, "huggingFaceApiUrl", "http://upstream.test");
+        ReflectionTestUtils.setField(service, "huggingFaceToken", "");
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "embedPath", "/embed");
+        ReflectionTestUtils.setField(service, "refreshBatchSize", 100);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        service.shutdown();
+        try (Stream<Path> files = Files.walk(uploads)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void plainAnswerIsStoredAsLittleEndianFloats() {
+        expectEmbed(withSuccess("{\"embedding\": [0.5, -1, 2.25], \"model_version\": \"arcface-1\"}",
+                MediaType.APPLICATION_JSON));
+
+        service.embedAndStore(1, "me.jpg");
+
+        server.verify();
+        assertArrayEquals(floats(0.5f, -1f, 2.25f), storedEmbedding());
+        assertEquals("arcface-1", storedModelVersion());
+        assertEquals("arcface-1", service.snapshot().get("modelVersion"));
+        assertEquals(1L, service.snapshot().get("computed"));
+    }
+
+    @Test
+    void gradioDataWrappingIsUnwrapped() {
+        expectEmbed(withSuccess("{\"data\": [{\"embedding\": [1, 2], \"model_version\": \"arcface-1\"}]}",
+                MediaType.APPLICATION_JSON));
+
+        service.embedAndStore(1, "me.jpg");
+
+        assertArrayEquals(floats(1f, 2f), storedEmbedding());
+        assertEquals("arcface-1", storedModelVersion());
+    }
+
+    @Test
+    void unusableAnswersStoreNothing() {
+        String tooMany = IntStream.range(0, 4097).mapToObj(i -> "0.1").collect(Collectors.joining(","));
+        String[] answers = {
+                "{\"embedding\": [0.5, \"x\"], \"model_version\": \"arcface-1\"}",
+                "{\"embedding\": [" + tooMany + "], \"model_version\": \"arcface-1\"}",
+                "{\"embedding\": [0.5, 0.25]}",
+                "{\"embedding\": [], \"model_version\": \"arcface-1\"}",
+        };
+        for (String answer : answers) {
+            expectEmbed(withSuccess(answer, MediaType.APPLICATION_JSON));
+        }
+
+        for (int i = 0; i < answers.length; i++) {
+            service.embedAndStore(1, "me.jpg");
+        }
+
+        server.verify();
+        assertNull(storedEmbedding());
+        assertNull(service.snapshot().get("modelVersion"));
+        assertEquals((long) answers.length, service.snapshot().get("failed"));
+        assertEquals(0L, service.snapshot().get("computed"));
+        assertEquals(true, service.snapshot().get("upstreamSupported"));
+    }
+
+    @Test
+    void embeddingOfAReplacedPictureIsNotStored() {
+        ResponseCreator answer = withSuccess("{\"embedding\": [1], \"model_version\": \"arcface-1\"}",
+                MediaType.APPLICATION_JSON);
+        // The user uploads a new picture while the old one is being embedded
+        expectEmbed(request -> {
+            jdbcTemplate.update("UPDATE users SET profile_picture_path = 'new.jpg' WHERE id = 1");
+            return answer.createResponse(request);
+        });
+
+        service.embedAndStore(1, "me.jpg");
+
+        server.verify();
+        assertNull(storedEmbedding());
+        assertNull(storedModelVersion());
+    }
+
+    @Test
+    void embeddingFromAnOlderModelIsNotUsed() {
+        User user = user("me.jpg");
+        byte[] embedding = floats(1f, 2f);
+        user.setReferenceEmbedding(embedding);
+        user.setEmbeddingModelVersion("arcface-1");
+
+        // Nothing reported yet, so the stored version is trusted
+        assertSame(embedding, service.getCurrentEmbedding(user));
+        service.onModelVersion("arcface-1");
+        assertSame(embedding, service.getCurrentEmbedding(user));
+
+        service.onModelVersion("arcface-2");
+        assertNull(service.getCurrentEmbedding(user));
+
+        user.setReferenceEmbedding(null);
+        assertNull(service.getCurrentEmbedding(user));
+
+        // Only calls that went through with the embedding count as used
+        assertEquals(0L, service.snapshot().get("usedForVerification"));
+        assertEquals(2L, service.snapshot().get("pictureFallbacks"));
+        service.onEmbeddingUsed();
+        assertEquals(1L, service.snapshot().get("usedForVerification"));
+    }
+
+    @Test
+    void missingEmbeddingEndpointDisablesEmbeddings() {
+        for (HttpStatus status : new HttpStatus[] { HttpStatus.NOT_FOUND, HttpStatus.METHOD_NOT_ALLOWED }) {
+            ReflectionTestUtils.setField(service, "unsupported", false);
+            server.reset();
+            expectEmbed(withStatus(status));
+
+            service.embedAndStore(1, "me.jpg");
+
+            server.verify();
+            assertEquals(false, service.snapshot().get("upstreamSupported"), status.toString());
+
+            // No further upstream calls, and verification sends the picture
+            User user = user("me.jpg");
+            user.setReferenceEmbedding(floats(1f));
+            service.scheduleEmbedding(user);
+            service.scheduleRefresh();
+            assertNull(service.getCurrentEmbedding(user));
+            server.verify();
+        }
+    }
+
+    @Test
+    void otherClientErrorsKeepEmbeddingsEnabled() {
+        expectEmbed(withStatus(HttpStatus.UNPROCESSABLE_ENTITY));
+
+        service.embedAndStore(1, "me.jpg");
+
+        server.verify();
+        assertEquals(true, service.snapshot().get("upstreamSupported"));
+        assertEquals(1L, service.snapshot().get("failed"));
+    }
+
+    @Test
+    void refreshIsQueuedOnlyOnceWhileWaiting() throws InterruptedException {
+        // No pictures, so a refresh only runs its query
+        jdbcTemplate.update("UPDATE users SET profile_picture_path = NULL WHERE id = 1");
+
+        service.scheduleEmbedding(user("hold"));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        service.scheduleRefresh();
+        service.scheduleRefresh();
+        service.scheduleRefresh();
+        release.countDown();
+        drainWorker();
+        assertEquals(1, refreshQueries.get());
+
+        // Queued again once the previous one has run
+        service.scheduleRefresh();
+        drainWorker();
+        assertEquals(2, refreshQueries.get());
+    }
+
+    // The worker runs tasks in order, so once this one has run everything before it has too
+    private void drainWorker() throws InterruptedException {
+        drained = new CountDownLatch(1);
+        service.scheduleEmbedding(user("drain"));
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+    }
+
+    private static User user(String picturePath) {
+        User user = new User();
+        user.setId(1L);
+        user.setProfilePicturePath(picturePath);
+        return user;
+    }
+
+    private void expectEmbed(ResponseCreator response) {
+        server.expect(requestTo(EMBED_URL))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(response);
+    }
+
+    private byte[] storedEmbedding() {
+        return jdbcTemplate.queryForObject("SELECT reference_embedding FROM users WHERE id = 1", byte[].class);
+    }
+
+    private String storedModelVersion() {
+        return jdbcTemplate.queryForObject("SELECT embedding_model_version FROM users WHERE id = 1", String.class);
+    }
+
+    private static byte[] floats(float... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : values) {
+            buffer.putFloat(value);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.pensionerverification.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServiceUnavailable;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class UpstreamWarmupServiceTest {
+
+    private static final String PING_URL = "http://upstream.test/";
+
+    private MockRestServiceServer server;
+    private UpstreamMetrics upstreamMetrics;
+    private UpstreamWarmupService warmup;
+
+    @BeforeEach
+    void setUp() {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        upstreamMetrics = new UpstreamMetrics();
+
+        warmup = new UpstreamWarmupService(new HuggingFaceService(), upstreamMetrics, restTemplate);
+        ReflectionTestUtils.setField(warmup, "huggingFaceApiUrl", "http://upstream.test");
+        ReflectionTestUtils.setField(warmup, "huggingFaceToken", "");
+        ReflectionTestUtils.setField(warmup, "enabled", true);
+        ReflectionTestUtils.setField(warmup, "pingPath", "/");
+        ReflectionTestUtils.setField(warmup, "keepaliveIntervalMillis", 600_000L);
+        ReflectionTestUtils.setField(warmup, "currentIntervalMillis", 600_000L);
+        ReflectionTestUtils.setField(warmup, "maxIntervalMillis", 21_600_000L);
+        ReflectionTestUtils.setField(warmup, "idleBackoffAfterMillis", 86_400_000L);
+        ReflectionTestUtils.setField(warmup, "maxPingsPerDay", 200);
+        ReflectionTestUtils.setField(warmup, "connections", 2);
+        ReflectionTestUtils.setField(warmup, "sampleImage", "");
+        ReflectionTestUtils.setField(warmup, "sampleVideo", "");
+        ReflectionTestUtils.setField(warmup, "startupRetryMillis", 1L);
+    }
+
+    @Test
+    void readyOnlyAfterTheUpstreamAnswers() {
+        expectPings(ExpectedCount.times(2), false);
+        // The answering ping, then one per pooled connection
+        expectPings(ExpectedCount.times(3), true);
+
+        assertFalse(warmup.isReady());
+        warmup.warmUp();
+
+        server.verify();
+        assertTrue(warmup.isReady());
+        assertFalse(warmup.isDegraded());
+    }
+
+    @Test
+    void startupStopsAtTheDailyCapAndReportsDegraded() {
+        ReflectionTestUtils.setField(warmup, "maxPingsPerDay", 3);
+        expectPings(ExpectedCount.times(3), false);
+
+        // Must return rather than spin once the cap is used up
+        warmup.warmUp();
+
+        server.verify();
+        assertTrue(warmup.isReady());
+        assertTrue(warmup.isDegraded());
+
+        // Still capped: keepAlive doesn't ping either
+        warmup.keepAlive();
+        server.verify();
+        assertTrue(warmup.isDegraded());
+    }
+
+    @Test
+    void keepAliveRecoversFromDegradedOnceTheCapResets() {
+        ReflectionTestUtils.setField(warmup, "maxPingsPerDay", 1);
+        expectPings(ExpectedCount.once(), false);
+        warmup.warmUp();
+        assertTrue(warmup.isDegraded());
+
+        // Next day: the cap starts over and the Space answers
+        server.reset();
+        ReflectionTestUtils.setField(warmup, "pingDay", LocalDate.now().toEpochDay() - 1);
+        expectPings(ExpectedCount.once(), true);
+        warmup.keepAlive();
+
+        server.verify();
+        assertTrue(warmup.isReady());
+        assertFalse(warmup.isDegraded());
+    }
+
+    @Test
+    void realCallClearsDegraded() throws InterruptedException {
+        ReflectionTestUtils.setField(warmup, "maxPingsPerDay", 1);
+        expectPings(ExpectedCount.once(), false);
+        warmup.warmUp();
+        assertTrue(warmup.isDegraded());
+
+        Thread.sleep(5);
+        upstreamMetrics.recordCall(UpstreamMetrics.PASS_FULL, 1000, 1_000_000);
+        warmup.keepAlive();
+
+        server.verify();
+        assertTrue(warmup.isReady());
+        assertFalse(warmup.isDegraded());
+    }
+
+    @Test
+    void failedKeepAlivePingMakesNotReadyUntilTheNextAnswer() {
+        expectPings(ExpectedCount.times(3), true);
+        warmup.warmUp();
+        assertTrue(warmup.isReady());
+
+        // Quiet long enough that keepAlive pings on every tick
+        ReflectionTestUtils.setField(warmup, "keepaliveIntervalMillis", 0L);
+        ReflectionTestUtils.setField(warmup, "currentIntervalMillis", 0L);
+        server.reset();
+        expectPings(ExpectedCount.times(2), false);
+        expectPings(ExpectedCount.once(), true);
+
+        warmup.keepAlive();
+        assertFalse(warmup.isReady());
+        warmup.keepAlive();
+        assertFalse(warmup.isReady());
+        warmup.keepAlive();
+
+        server.verify();
+        assertTrue(warmup.isReady());
+    }
+
+    private void expectPings(ExpectedCount count, boolean answer) {
+        server.expect(count, requestTo(PING_URL))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(answer ? withSuccess() : withServiceUnavailable());
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.pensionerverification.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exports a large seeded table and checks that memory stays flat: the
+ * persistence context never holds more than the row being written, and the
+ * heap retained while streaming doesn't grow with the number of rows.
+ *
+ * Row count can be raised with -Dexport.benchmark.users=...
+ */
+// File-backed H2 spools large results to disk; the in-memory one would hold them all on the heap
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:file:./target/export-benchmark;MAX_MEMORY_ROWS=1000")
+@ActiveProfiles("test")
+class VerificationExportServiceBenchmarkTest {
+
+    private static final int USERS = Integer.getInteger("export.benchmark.users", 200_000);
+    private static final long MAX_RETAINED_GROWTH_BYTES = 64L * 1024 * 1024;
+
+    @Autowired
+    private VerificationExportService verificationExportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void seedUsers() {
+        jdbcTemplate.update("DELETE FROM users");
+        long now = System.currentTimeMillis();
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            Timestamp verified = i % 3 == 0 ? null : new Timestamp(now - (i % 400) * 24L * 60 * 60 * 1000);
+            batch.add(new Object[] { "pensioner" + i, "password", "uploads/photo" + i + ".jpg", verified });
+            if (batch.size() == 10_000) {
+                insert(batch);
+                batch.clear();
+            }
+        }
+        insert(batch);
+    }
+
+    private void insert(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate("INSERT INTO users (username, password, profile_picture_path, "
+                + "last_verification_date) VALUES (?, ?, ?, ?)", batch);
+    }
+
+    @Test
+    void csvExportStreamsWithFlatMemory() throws Exception {
+        runExport(VerificationExportService.Format.CSV);
+    }
+
+    @Test
+    void ndjsonExportStreamsWithFlatMemory() throws Exception {
+        runExport(VerificationExportService.Format.NDJSON);
+    }
+
+    private void runExport(VerificationExportService.Format format) throws Exception {
+        long baseline = retainedHeap();
+        MemorySamplingOutputStream out = new MemorySamplingOutputStream();
+
+        long start = System.nanoTime();
+        long rows = verificationExportService.export(out, format);
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        System.out.printf("%s export: %d rows, %d bytes in %d ms (%.0f rows/s); "
+                + "max persistence context %d entities, retained heap growth %d KB%n",
+                format, rows, out.bytes, elapsedMillis, rows * 1000.0 / elapsedMillis,
+                out.maxManagedEntities, (out.maxRetainedHeap - baseline) / 1024);
+
+        assertEquals(USERS, rows);
+        assertTrue(out.samples > 0, "export wrote nothing");
+        assertTrue(out.maxManagedEntities <= 1,
+                "persistence context grew to " + out.maxManagedEntities + " entities");
+        assertTrue(out.maxRetainedHeap - baseline < MAX_RETAINED_GROWTH_BYTES,
+                "retained heap grew by " + (out.maxRetainedHeap - baseline) / 1024 + " KB");
+    }
+
+    private static long retainedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Receives the export's buffered chunks on the exporting thread, inside its transaction
+    private class MemorySamplingOutputStream extends OutputStream {
+        private long bytes;
+        private int samples;
+        private int maxManagedEntities;
+        private long maxRetainedHeap;
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            maxManagedEntities = Math.max(maxManagedEntities,
+                    entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+            // A full GC per chunk would dominate the run, so only every 16th chunk is measured
+            if (samples++ % 16 == 0) {
+                maxRetainedHeap = Math.max(maxRetainedHeap, retainedHeap());
+            }
+        }
+    }
+}
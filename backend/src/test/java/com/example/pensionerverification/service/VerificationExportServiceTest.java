@@ -0,0 +1,21 @@
+package com.example.pensionerverification.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VerificationExportServiceTest {
+
+    @Test
+    void leavesPlainValuesUnquoted() {
+        assertEquals("pensioner1", VerificationExportService.csvEscape("pensioner1"));
+    }
+
+    @Test
+    void quotesSeparatorsQuotesAndLineBreaks() {
+        assertEquals("\"a,b\"", VerificationExportService.csvEscape("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", VerificationExportService.csvEscape("say \"hi\""));
+        assertEquals("\"a\nb\"", VerificationExportService.csvEscape("a\nb"));
+        assertEquals("\"a\rb\"", VerificationExportService.csvEscape("a\rb"));
+    }
+}
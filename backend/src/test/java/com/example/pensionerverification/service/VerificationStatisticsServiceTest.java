@@ -0,0 +1,217 @@
+package com.example.pensionerverification.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class VerificationStatisticsServiceTest {
+
+    // +05:45, so a day boundary in this zone is not a day boundary in UTC
+    private static final ZoneId ZONE = ZoneId.of("Asia/Kathmandu");
+    private static final int WINDOW_DAYS = (int) Duration.ofMillis(VerificationPolicy.RENEWAL_PERIOD_MILLIS).toDays();
+
+    private MutableClock clock;
+    private JdbcTemplate jdbcTemplate;
+    private Runnable afterRead;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(LocalDateTime.of(2024, 3, 10, 9, 0).atZone(ZONE).toInstant(), ZONE);
+        afterRead = null;
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:statistics-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) {
+                super.query(sql, rch, args);
+                // Lets a test deliver events between the database read and the swap
+                if (afterRead != null) {
+                    Runnable hook = afterRead;
+                    afterRead = null;
+                    hook.run();
+                }
+            }
+        };
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "last_verification_date TIMESTAMP)");
+    }
+
+    @Test
+    void verifiedUserBecomesOverdueOnceTheDayLeavesTheWindow() {
+        VerificationStatisticsService statistics = new VerificationStatisticsService(jdbcTemplate, clock);
+        statistics.onUsersImported(2);
+        statistics.onVerificationAttempt(null, true, false);
+
+        assertCounts(statistics, 2, 1, 1, 0);
+
+        clock.advance(Duration.ofDays(WINDOW_DAYS));
+        assertCounts(statistics, 2, 1, 1, 0);
+
+        clock.advance(Duration.ofDays(1));
+        assertCounts(statistics, 2, 1, 0, 1);
+    }
+
+    @Test
+    void reverificationMovesTheUserToToday() {
+        VerificationStatisticsService statistics = new VerificationStatisticsService(jdbcTemplate, clock);
+        statistics.onUsersImported(1);
+        Date first = Date.from(clock.instant());
+        statistics.onVerificationAttempt(null, true, false);
+
+        clock.advance(Duration.ofDays(10));
+        statistics.onVerificationAttempt(first, true, false);
+        assertCounts(statistics, 1, 0, 1, 0);
+
+        // Past the window of the first verification, inside that of the second
+        clock.advance(Duration.ofDays(WINDOW_DAYS - 5));
+        assertCounts(statistics, 1, 0, 1, 0);
+    }
+
+    @Test
+    void attemptCountersRollOverDaily() {
+        VerificationStatisticsService statistics = new VerificationStatisticsService(jdbcTemplate, clock);
+        statistics.onVerificationAttempt(null, false, true);
+        clock.advance(Duration.ofDays(1));
+        statistics.onVerificationAttempt(null, false, false);
+        statistics.onVerificationAttempt(null, false, false);
+
+        Map<String, Long> attempts = attemptsPerDay(statistics);
+        assertEquals(30, attempts.size());
+        assertEquals(1L, attempts.get("2024-03-10"));
+        assertEquals(2L, attempts.get("2024-03-11"));
+        assertEquals(1L, spoofingPerDay(statistics).get("2024-03-10"));
+
+        // 2024-03-10 is now the oldest day kept
+        clock.advance(Duration.ofDays(28));
+        assertEquals(1L, attemptsPerDay(statistics).get("2024-03-10"));
+        assertEquals(0L, attemptsPerDay(statistics).getOrDefault("2024-04-08", -1L));
+
+        clock.advance(Duration.ofDays(1));
+        assertNull(attemptsPerDay(statistics).get("2024-03-10"));
+        assertEquals(2L, attemptsPerDay(statistics).get("2024-03-11"));
+
+        // Long gap: everything is cleared, nothing from the old days reappears
+        clock.advance(Duration.ofDays(100));
+        statistics.onVerificationAttempt(null, false, false);
+        long total = attemptsPerDay(statistics).values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(1L, total);
+    }
+
+    @Test
+    void reconcileBucketsDaysInTheSameZoneAsEvents() {
+        Instant beforeMidnight = LocalDateTime.of(2024, 3, 31, 23, 50).atZone(ZONE).toInstant();
+        Instant afterMidnight = LocalDateTime.of(2024, 4, 1, 0, 10).atZone(ZONE).toInstant();
+        Instant outsideWindow = LocalDateTime.of(2024, 4, 5, 12, 0).atZone(ZONE).minusDays(WINDOW_DAYS + 1)
+                .toInstant();
+
+        clock.set(outsideWindow);
+        VerificationStatisticsService fromEvents = new VerificationStatisticsService(jdbcTemplate, clock);
+        fromEvents.onUsersImported(4);
+        for (Instant verifiedAt : new Instant[] { outsideWindow, beforeMidnight, afterMidnight }) {
+            clock.set(verifiedAt);
+            fromEvents.onVerificationAttempt(null, true, false);
+            jdbcTemplate.update("INSERT INTO users (last_verification_date) VALUES (?)", Timestamp.from(verifiedAt));
+        }
+        jdbcTemplate.update("INSERT INTO users (last_verification_date) VALUES (NULL)");
+
+        clock.set(LocalDateTime.of(2024, 4, 5, 12, 0).atZone(ZONE).toInstant());
+        VerificationStatisticsService reconciled = new VerificationStatisticsService(jdbcTemplate, clock);
+        reconciled.reconcile();
+
+        assertCounts(fromEvents, 4, 1, 2, 1);
+        assertCounts(reconciled, 4, 1, 2, 1);
+        // 00:10 local on April 1st is still March in UTC
+        assertEquals(1L, fromEvents.getSnapshot().get("verifiedThisMonth"));
+        assertEquals(1L, reconciled.getSnapshot().get("verifiedThisMonth"));
+        assertNotNull(reconciled.getSnapshot().get("lastReconciled"));
+    }
+
+    @Test
+    void eventsDuringReconcileAreReplayed() {
+        jdbcTemplate.update("INSERT INTO users (last_verification_date) VALUES (?)", Timestamp.from(clock.instant()));
+        jdbcTemplate.update("INSERT INTO users (last_verification_date) VALUES (NULL)");
+
+        VerificationStatisticsService statistics = new VerificationStatisticsService(jdbcTemplate, clock);
+        // A user registers and verifies after the read but before the counters are swapped in
+        afterRead = () -> {
+            statistics.onUserRegistered();
+            statistics.onVerificationAttempt(null, true, false);
+        };
+        statistics.reconcile();
+
+        assertCounts(statistics, 3, 1, 2, 0);
+
+        // Replay is only for the reconcile in progress
+        statistics.reconcile();
+        assertCounts(statistics, 2, 1, 1, 0);
+    }
+
+    private static void assertCounts(VerificationStatisticsService statistics, long total, long neverVerified,
+            long verified, long overdue) {
+        Map<String, Object> snapshot = statistics.getSnapshot();
+        assertEquals(total, snapshot.get("totalUsers"), "totalUsers");
+        assertEquals(neverVerified, snapshot.get("neverVerified"), "neverVerified");
+        assertEquals(verified, snapshot.get("verifiedWithinRenewalPeriod"), "verifiedWithinRenewalPeriod");
+        assertEquals(overdue, snapshot.get("overdue"), "overdue");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> attemptsPerDay(VerificationStatisticsService statistics) {
+        return (Map<String, Long>) statistics.getSnapshot().get("verificationAttemptsPerDay");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> spoofingPerDay(VerificationStatisticsService statistics) {
+        return (Map<String, Long>) statistics.getSnapshot().get("spoofingAttemptsPerDay");
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now;
+        private final ZoneId zone;
+
+        MutableClock(Instant now, ZoneId zone) {
+            this.now = now;
+            this.zone = zone;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        void set(Instant instant) {
+            now = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new MutableClock(now, zone);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
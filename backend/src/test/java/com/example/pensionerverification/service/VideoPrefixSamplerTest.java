@@ -0,0 +1,284 @@
+package com.example.pensionerverification.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoPrefixSamplerTest {
+
+    private static final int WEBM_CLUSTER_ID = 0x1F43B675;
+
+    private final VideoPrefixSampler sampler = new VideoPrefixSampler();
+    private Path dir;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("prefix-sampler");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    void fragmentedMp4IsCutInFrontOfTheNextFragment() throws IOException {
+        byte[] video = fragmentedMp4(10, false);
+        List<Long> fragments = topLevelBoxes(video, "moof");
+
+        for (double fraction : new double[] { 0.25, 0.4, 0.6, 0.8 }) {
+            long target = (long) (video.length * fraction);
+            long expected = fragments.stream().skip(1).filter(offset -> offset >= target).findFirst().orElseThrow();
+
+            byte[] sample = sample(video, fraction);
+            assertNotNull(sample, "fraction " + fraction);
+            assertEquals(expected, sample.length, "fraction " + fraction);
+            assertArrayEquals(Arrays.copyOf(video, sample.length), sample, "fraction " + fraction);
+        }
+    }
+
+    @Test
+    void fragmentedMp4SampleKeepsAtLeastOneWholeFragment() throws IOException {
+        byte[] video = fragmentedMp4(10, false);
+        List<Long> fragments = topLevelBoxes(video, "moof");
+
+        // The target lies in the init segment; cutting at the first moof would leave no frames at all
+        byte[] sample = sample(video, fragments.get(0) / 2.0 / video.length);
+        assertNotNull(sample);
+        long secondFragment = fragments.get(1);
+        assertEquals(secondFragment, sample.length);
+    }
+
+    @Test
+    void fragmentedMp4WithLargeSizeBoxesIsWalked() throws IOException {
+        byte[] video = fragmentedMp4(6, true);
+        List<Long> fragments = topLevelBoxes(video, "moof");
+        long target = (long) (video.length * 0.5);
+
+        long expected = fragments.stream().skip(1).filter(offset -> offset >= target).findFirst().orElseThrow();
+
+        byte[] sample = sample(video, 0.5);
+        assertNotNull(sample);
+        assertEquals(expected, sample.length);
+    }
+
+    @Test
+    void regularMp4HasNoSample() throws IOException {
+        byte[] moov = box("moov", box("mvhd", new byte[100]));
+        byte[] mdat = box("mdat", randomBytes(20_000, 1));
+        byte[] ftyp = box("ftyp", concat(ascii("isom"), u32(0), ascii("isommp42")));
+
+        // Sample tables cover the whole file wherever the moov sits
+        assertNull(sample(concat(ftyp, moov, mdat), 0.4));
+        assertNull(sample(concat(ftyp, mdat, moov), 0.4));
+    }
+
+    @Test
+    void fragmentedMp4WithoutFragmentAfterTargetHasNoSample() throws IOException {
+        byte[] video = fragmentedMp4(3, false);
+        List<Long> fragments = topLevelBoxes(video, "moof");
+        double fraction = (fragments.get(2) + 2.0) / video.length;
+
+        assertNull(sample(video, fraction));
+    }
+
+    @Test
+    void webmIsCutInFrontOfTheNextCluster() throws IOException {
+        byte[] video = webm(8);
+        List<Long> clusters = webmClusters(video);
+
+        for (double fraction : new double[] { 0.2, 0.4, 0.7 }) {
+            long target = (long) (video.length * fraction);
+            long expected = clusters.stream().filter(offset -> offset >= target).findFirst().orElseThrow();
+
+            byte[] sample = sample(video, fraction);
+            assertNotNull(sample, "fraction " + fraction);
+            assertEquals(expected, sample.length, "fraction " + fraction);
+            assertArrayEquals(Arrays.copyOf(video, sample.length), sample, "fraction " + fraction);
+        }
+    }
+
+    @Test
+    void webmPastTheLastClusterHasNoSample() throws IOException {
+        byte[] video = webm(3);
+        List<Long> clusters = webmClusters(video);
+        double fraction = (clusters.get(clusters.size() - 1) + 2.0) / video.length;
+
+        assertNull(sample(video, fraction));
+    }
+
+    @Test
+    void nothingToCut() throws IOException {
+        byte[] video = fragmentedMp4(10, false);
+        assertNull(sample(video, 0));
+        assertNull(sample(video, 1));
+
+        assertNull(sample(randomBytes(50_000, 2), 0.4));
+        assertNull(sample(ascii("ftyp"), 0.5));
+    }
+
+    @Test
+    void sampleIsWrittenNextToTheVideo() throws IOException {
+        byte[] video = fragmentedMp4(10, false);
+        Path file = dir.resolve("clip.mp4");
+        Files.write(file, video);
+
+        Path sample = sampler.writePrefixSample(file, 0.4);
+
+        assertNotNull(sample);
+        assertEquals(dir, sample.getParent());
+        assertTrue(sample.getFileName().toString().endsWith("clip.mp4"));
+        assertArrayEquals(video, Files.readAllBytes(file));
+    }
+
+    private byte[] sample(byte[] video, double fraction) throws IOException {
+        Path file = Files.createTempFile(dir, "video-", ".bin");
+        Files.write(file, video);
+        Path sample = sampler.writePrefixSample(file, fraction);
+        return sample == null ? null : Files.readAllBytes(sample);
+    }
+
+    /** Init segment (ftyp, moov) followed by moof + mdat fragments of a few kilobytes each. */
+    static byte[] fragmentedMp4(int fragments, boolean largeSizeMdat) {
+        Random random = new Random(31);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(box("ftyp", concat(ascii("iso5"), u32(0), ascii("iso5dash"))));
+        out.writeBytes(box("moov", concat(box("mvhd", new byte[100]), box("mvex", box("trex", new byte[24])))));
+        for (int i = 0; i < fragments; i++) {
+            out.writeBytes(box("moof", concat(box("mfhd", concat(u32(0), u32(i + 1))),
+                    box("traf", box("tfhd", new byte[8])))));
+            byte[] payload = new byte[3000 + random.nextInt(2000)];
+            random.nextBytes(payload);
+            if (largeSizeMdat) {
+                // size 1: the real size follows the type as a 64-bit value
+                out.writeBytes(concat(u32(1), ascii("mdat"), ByteBuffer.allocate(8).putLong(16L + payload.length)
+                        .array(), payload));
+            } else {
+                out.writeBytes(box("mdat", payload));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** EBML header and a live-recorded Segment: unknown sizes, Info, Tracks, then clusters. */
+    static byte[] webm(int clusters) {
+        Random random = new Random(41);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(concat(bytes(0x1A, 0x45, 0xDF, 0xA3, 0x87, 0x42, 0x82, 0x84), ascii("webm")));
+        out.writeBytes(bytes(0x18, 0x53, 0x80, 0x67, 0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF));
+        out.writeBytes(concat(bytes(0x15, 0x49, 0xA9, 0x66, 0x8A), bytes(0x2A, 0xD7, 0xB1, 0x83, 0x0F, 0x42, 0x40),
+                bytes(0x4D, 0x80, 0x80)));
+        out.writeBytes(bytes(0x16, 0x54, 0xAE, 0x6B, 0x88, 0xAE, 0x86, 0xD7, 0x81, 0x01, 0x83, 0x81, 0x01));
+        for (int i = 0; i < clusters; i++) {
+            byte[] frame = new byte[2500 + random.nextInt(1500)];
+            random.nextBytes(frame);
+            // A Cluster ID inside frame data that isn't followed by a Timecode must not be cut at
+            frame[100] = 0x1F;
+            frame[101] = 0x43;
+            frame[102] = (byte) 0xB6;
+            frame[103] = 0x75;
+            frame[104] = (byte) 0x81;
+            frame[105] = 0x00;
+            byte[] block = concat(bytes(0xA3), vint4(frame.length), frame);
+            byte[] body = concat(bytes(0xE7, 0x82), u16(i * 33), block);
+            out.writeBytes(concat(u32(WEBM_CLUSTER_ID), vint4(body.length), body));
+        }
+        return out.toByteArray();
+    }
+
+    // Top-level box offsets of the given type
+    private static List<Long> topLevelBoxes(byte[] data, String type) {
+        List<Long> offsets = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long pos = 0;
+        while (pos + 8 <= data.length) {
+            long size = buffer.getInt((int) pos) & 0xFFFFFFFFL;
+            if (size == 1) {
+                size = buffer.getLong((int) pos + 8);
+            }
+            if (type.equals(new String(data, (int) pos + 4, 4, StandardCharsets.ISO_8859_1))) {
+                offsets.add(pos);
+            }
+            pos += size;
+        }
+        return offsets;
+    }
+
+    // Offsets of the real clusters: ID, a 4-byte size, then the Timecode element
+    private static List<Long> webmClusters(byte[] data) {
+        List<Long> offsets = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        for (int pos = 0; pos + 9 <= data.length; pos++) {
+            if (buffer.getInt(pos) == WEBM_CLUSTER_ID && (data[pos + 4] & 0xF0) == 0x10
+                    && (data[pos + 8] & 0xFF) == 0xE7) {
+                offsets.add((long) pos);
+            }
+        }
+        return offsets;
+    }
+
+    private static byte[] box(String type, byte[] body) {
+        return concat(u32(body.length + 8), ascii(type), body);
+    }
+
+    private static byte[] vint4(int value) {
+        return bytes(0x10 | (value >> 24), value >> 16, value >> 8, value);
+    }
+
+    private static byte[] u16(int value) {
+        return bytes(value >> 8, value);
+    }
+
+    private static byte[] u32(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.writeBytes(array);
+        }
+        return out.toByteArray();
+    }
+}
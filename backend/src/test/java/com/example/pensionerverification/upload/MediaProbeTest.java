@@ -0,0 +1,222 @@
+package com.example.pensionerverification.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaProbeTest {
+
+    @Test
+    void identifiesByMagicBytes() {
+        assertEquals("jpeg", identify(jpeg(0xC0, 10, 10)).getFormat());
+        assertEquals("png", identify(png(10, 10)).getFormat());
+        assertEquals("webm", identify(webm()).getFormat());
+        assertEquals("mp4", identify(mp4("isom", 1.0, 10, 10)).getFormat());
+        assertEquals("mov", identify(mp4("qt  ", 1.0, 10, 10)).getFormat());
+        assertEquals(MediaProbe.Kind.VIDEO, identify(mp4("isom", 1.0, 10, 10)).getKind());
+        assertEquals(MediaProbe.Kind.IMAGE, identify(png(10, 10)).getKind());
+
+        assertNull(identify(ascii("GIF89a......")));
+        assertNull(identify(ascii("<html><body>")));
+        // Too short to decide
+        assertNull(MediaProbe.identify(new byte[] { (byte) 0xFF, (byte) 0xD8 }, 2));
+    }
+
+    @Test
+    void readsJpegFrameHeaderAfterOtherSegments() {
+        MediaProbe baseline = probe(jpeg(0xC0, 640, 480));
+        assertEquals(640, baseline.getWidth());
+        assertEquals(480, baseline.getHeight());
+
+        MediaProbe progressive = probe(jpeg(0xC2, 3000, 4000));
+        assertEquals(3000, progressive.getWidth());
+        assertEquals(4000, progressive.getHeight());
+    }
+
+    @Test
+    void jpegWithoutFrameHeaderHasNoSize() {
+        // DHT (0xC4) is in the SOF marker range but isn't a frame header; then start of scan
+        byte[] data = concat(bytes(0xFF, 0xD8), segment(0xC4, new byte[20]), segment(0xDA, new byte[10]));
+        MediaProbe probe = probe(data);
+        assertNull(probe.getWidth());
+        assertNull(probe.getHeight());
+    }
+
+    @Test
+    void readsPngHeader() {
+        MediaProbe probe = probe(png(1024, 768));
+        assertEquals(1024, probe.getWidth());
+        assertEquals(768, probe.getHeight());
+    }
+
+    @Test
+    void pngSizesPastIntRangeStayHuge() {
+        // 0x80000000 and 0xFFFFFFFF would wrap negative and slip under any limit
+        MediaProbe probe = probe(png(0x8000_0000, 0xFFFF_FFFF));
+        assertEquals(Integer.MAX_VALUE, probe.getWidth());
+        assertEquals(Integer.MAX_VALUE, probe.getHeight());
+    }
+
+    @Test
+    void readsMp4DurationAndTrackSize() {
+        MediaProbe probe = probe(mp4("isom", 12.5, 3840, 2160));
+        assertEquals(12.5, probe.getDurationSeconds(), 1e-9);
+        assertEquals(3840, probe.getWidth());
+        assertEquals(2160, probe.getHeight());
+    }
+
+    @Test
+    void fragmentedMp4HasNoDuration() {
+        MediaProbe probe = probe(mp4("isom", 0, 1280, 720));
+        assertNull(probe.getDurationSeconds());
+        assertEquals(1280, probe.getWidth());
+    }
+
+    @Test
+    void readsWebmDurationAndTrackSize() {
+        MediaProbe probe = probe(webm());
+        assertEquals(5.0, probe.getDurationSeconds(), 1e-9);
+        assertEquals(1280, probe.getWidth());
+        assertEquals(720, probe.getHeight());
+    }
+
+    @Test
+    void truncatedHeadersNeverYieldWrongValues() {
+        assertPrefixesAreSafe(jpeg(0xC0, 640, 480), 640, 480, null);
+        assertPrefixesAreSafe(png(1024, 768), 1024, 768, null);
+        assertPrefixesAreSafe(mp4("isom", 12.5, 3840, 2160), 3840, 2160, 12.5);
+        assertPrefixesAreSafe(webm(), 1280, 720, 5.0);
+    }
+
+    // Every prefix must probe without throwing and report either nothing or the real value
+    private static void assertPrefixesAreSafe(byte[] data, int width, int height, Double duration) {
+        for (int length = MediaProbe.MAGIC_BYTES; length <= data.length; length++) {
+            MediaProbe probe = MediaProbe.identify(data, length);
+            assertNotNull(probe, "prefix " + length);
+            probe.probe(data, length);
+
+            String at = probe.getFormat() + " prefix " + length;
+            assertTrue(probe.getWidth() == null || probe.getWidth() == width, at);
+            assertTrue(probe.getHeight() == null || probe.getHeight() == height, at);
+            assertTrue(probe.getDurationSeconds() == null
+                    || (duration != null && Math.abs(probe.getDurationSeconds() - duration) < 1e-9), at);
+            if (length == data.length) {
+                assertEquals(width, probe.getWidth(), at);
+                assertEquals(height, probe.getHeight(), at);
+            }
+        }
+    }
+
+    private static MediaProbe identify(byte[] data) {
+        return MediaProbe.identify(data, data.length);
+    }
+
+    private static MediaProbe probe(byte[] data) {
+        MediaProbe probe = identify(data);
+        assertNotNull(probe);
+        probe.probe(data, data.length);
+        return probe;
+    }
+
+    // SOI, APP0 (JFIF), DQT, then the frame header and start of scan
+    private static byte[] jpeg(int sofMarker, int width, int height) {
+        byte[] frame = concat(bytes(8), u16(height), u16(width), bytes(3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1));
+        return concat(bytes(0xFF, 0xD8),
+                segment(0xE0, concat(ascii("JFIF"), bytes(0, 1, 1, 0, 0, 1, 0, 1, 0, 0))),
+                segment(0xDB, new byte[65]),
+                segment(sofMarker, frame),
+                segment(0xDA, new byte[10]));
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        return concat(bytes(0xFF, marker), u16(payload.length + 2), payload);
+    }
+
+    static byte[] png(int width, int height) {
+        byte[] ihdr = concat(u32(width), u32(height), bytes(8, 2, 0, 0, 0));
+        return concat(bytes(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'), u32(ihdr.length), ascii("IHDR"), ihdr,
+                u32(0));
+    }
+
+    static byte[] mp4(String brand, double durationSeconds, int width, int height) {
+        int timescale = 1000;
+        byte[] mvhd = new byte[100];
+        ByteBuffer.wrap(mvhd).putInt(12, timescale).putInt(16, (int) Math.round(durationSeconds * timescale));
+
+        byte[] tkhd = new byte[84];
+        ByteBuffer.wrap(tkhd).putInt(76, width << 16).putInt(80, height << 16);
+        // An audio track (0x0) before the video track must not hide it
+        byte[] audioTkhd = new byte[84];
+
+        return concat(box("ftyp", concat(ascii(brand), u32(0), ascii("isommp42"))),
+                box("moov", concat(box("mvhd", mvhd),
+                        box("trak", box("tkhd", audioTkhd)),
+                        box("trak", concat(box("tkhd", tkhd), box("mdia", box("mdhd", new byte[24])))))),
+                box("mdat", new byte[64]));
+    }
+
+    private static byte[] box(String type, byte[] body) {
+        return concat(u32(body.length + 8), ascii(type), body);
+    }
+
+    // EBML header, Segment of unknown size (as MediaRecorder writes), Info, Tracks, then a Cluster
+    private static byte[] webm() {
+        byte[] header = element(bytes(0x1A, 0x45, 0xDF, 0xA3), element(bytes(0x42, 0x82), ascii("webm")));
+        byte[] info = element(bytes(0x15, 0x49, 0xA9, 0x66), concat(
+                element(bytes(0x2A, 0xD7, 0xB1), bytes(0x0F, 0x42, 0x40)),
+                element(bytes(0x44, 0x89), ByteBuffer.allocate(4).putFloat(5000f).array()),
+                element(bytes(0x4D, 0x80), ascii("test muxer"))));
+        byte[] video = element(bytes(0xE0), concat(
+                element(bytes(0xB0), u16(1280)),
+                element(bytes(0xBA), u16(720))));
+        byte[] tracks = element(bytes(0x16, 0x54, 0xAE, 0x6B), element(bytes(0xAE), concat(
+                element(bytes(0xD7), bytes(1)),
+                element(bytes(0x86), ascii("V_VP8")),
+                video)));
+        byte[] cluster = concat(bytes(0x1F, 0x43, 0xB6, 0x75, 0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF),
+                new byte[32]);
+        byte[] segment = concat(bytes(0x18, 0x53, 0x80, 0x67, 0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF),
+                info, tracks, cluster);
+        return concat(header, segment);
+    }
+
+    private static byte[] element(byte[] id, byte[] body) {
+        // Two byte size vint, enough for these fixtures
+        return concat(id, bytes(0x40 | (body.length >> 8), body.length & 0xFF), body);
+    }
+
+    private static byte[] u16(int value) {
+        return bytes(value >> 8, value);
+    }
+
+    private static byte[] u32(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.writeBytes(array);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.pensionerverification.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultipartStreamReaderTest {
+
+    private static final String BOUNDARY = "----formBoundary7MA4YWxk";
+
+    @Test
+    void readsPartsAndSkipsPreambleAndEpilogue() throws IOException {
+        byte[] file = randomBytes(5000, 1);
+        byte[] body = concat(
+                ascii("This is the preamble; it should be ignored\r\n"),
+                ascii("--" + BOUNDARY + "\r\n"),
+                ascii("Content-Disposition: form-data; name=\"username\"\r\n\r\n"),
+                ascii("pensioner1"),
+                ascii("\r\n--" + BOUNDARY + "\r\n"),
+                ascii("Content-Disposition: form-data; name=\"video\"; filename=\"clip.mp4\"\r\n"),
+                ascii("Content-Type: video/mp4\r\n\r\n"),
+                file,
+                ascii("\r\n--" + BOUNDARY + "--\r\n"),
+                ascii("Epilogue, also ignored"));
+
+        List<byte[]> parts = readAll(new ByteArrayInputStream(body), Long.MAX_VALUE);
+
+        assertEquals(2, parts.size());
+        assertArrayEquals(ascii("pensioner1"), parts.get(0));
+        assertArrayEquals(file, parts.get(1));
+    }
+
+    @Test
+    void firstBoundaryWithoutPreambleMatches() throws IOException {
+        byte[] body = ascii("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"a\"\r\n\r\n"
+                + "1\r\n--" + BOUNDARY + "--");
+
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY,
+                Long.MAX_VALUE);
+
+        assertTrue(reader.nextPart());
+        assertEquals("form-data; name=\"a\"", reader.getHeaders().get("content-disposition"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.readPartBody(out);
+        assertArrayEquals(ascii("1"), out.toByteArray());
+        assertFalse(reader.nextPart());
+        assertFalse(reader.nextPart());
+    }
+
+    @Test
+    void delimiterSplitAcrossReadsAtEveryOffset() throws IOException {
+        // Data that almost contains the delimiter must come through untouched
+        byte[] tricky = ascii("x\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1) + "!\r\n-\r\n--");
+        byte[] file = concat(randomBytes(300, 2), tricky, randomBytes(300, 3));
+        byte[] body = concat(
+                ascii("--" + BOUNDARY + "\r\n"),
+                ascii("Content-Disposition: form-data; name=\"image\"; filename=\"a.jpg\"\r\n\r\n"),
+                file,
+                ascii("\r\n--" + BOUNDARY + "\r\n"),
+                ascii("Content-Disposition: form-data; name=\"note\"\r\n\r\n"),
+                tricky,
+                ascii("\r\n--" + BOUNDARY + "--\r\n"));
+
+        for (int chunk = 1; chunk <= 80; chunk++) {
+            List<byte[]> parts = readAll(new ChunkedInputStream(body, chunk), Long.MAX_VALUE);
+            assertEquals(2, parts.size(), "chunk size " + chunk);
+            assertArrayEquals(file, parts.get(0), "chunk size " + chunk);
+            assertArrayEquals(tricky, parts.get(1), "chunk size " + chunk);
+        }
+    }
+
+    @Test
+    void unreadPartIsSkippedByNextPart() throws IOException {
+        byte[] body = ascii("--" + BOUNDARY + "\r\n\r\nskipped\r\n--" + BOUNDARY + "\r\n\r\nread\r\n--"
+                + BOUNDARY + "--");
+        MultipartStreamReader reader = new MultipartStreamReader(new ChunkedInputStream(body, 3), BOUNDARY,
+                Long.MAX_VALUE);
+
+        assertTrue(reader.nextPart());
+        assertTrue(reader.nextPart());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.readPartBody(out);
+        assertArrayEquals(ascii("read"), out.toByteArray());
+        assertFalse(reader.nextPart());
+    }
+
+    @Test
+    void missingBoundaryIsBadRequest() {
+        byte[] body = ascii("no multipart here at all");
+        UploadRejectedException e = assertThrows(UploadRejectedException.class,
+                () -> readAll(new ByteArrayInputStream(body), Long.MAX_VALUE));
+        assertEquals(400, e.getStatus());
+    }
+
+    @Test
+    void missingCloseDelimiterIsBadRequest() {
+        byte[] body = ascii("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\ntruncated");
+        UploadRejectedException e = assertThrows(UploadRejectedException.class,
+                () -> readAll(new ByteArrayInputStream(body), Long.MAX_VALUE));
+        assertEquals(400, e.getStatus());
+    }
+
+    @Test
+    void truncatedHeadersAreBadRequest() {
+        byte[] body = ascii("--" + BOUNDARY + "\r\nContent-Disposition: form-data; na");
+        UploadRejectedException e = assertThrows(UploadRejectedException.class,
+                () -> readAll(new ByteArrayInputStream(body), Long.MAX_VALUE));
+        assertEquals(400, e.getStatus());
+    }
+
+    @Test
+    void oversizedBodyIsRejectedWhileReading() {
+        byte[] body = concat(ascii("--" + BOUNDARY + "\r\n\r\n"), randomBytes(200_000, 4),
+                ascii("\r\n--" + BOUNDARY + "--"));
+        UploadRejectedException e = assertThrows(UploadRejectedException.class,
+                () -> readAll(new ByteArrayInputStream(body), 100_000));
+        assertEquals(413, e.getStatus());
+    }
+
+    private static List<byte[]> readAll(InputStream in, long maxBytes) throws IOException {
+        MultipartStreamReader reader = new MultipartStreamReader(in, BOUNDARY, maxBytes);
+        List<byte[]> parts = new ArrayList<>();
+        while (reader.nextPart()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            reader.readPartBody(out);
+            parts.add(out.toByteArray());
+        }
+        return parts;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.writeBytes(array);
+        }
+        return out.toByteArray();
+    }
+
+    /** Hands out at most chunkSize bytes per read, like a slow network. */
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+
+        private final int chunkSize;
+
+        ChunkedInputStream(byte[] data, int chunkSize) {
+            super(data);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+}
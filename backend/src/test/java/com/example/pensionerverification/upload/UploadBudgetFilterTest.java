@@ -0,0 +1,137 @@
+package com.example.pensionerverification.upload;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadBudgetFilterTest {
+
+    private UploadBudget budget;
+    private UploadBudgetFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        budget = new UploadBudget(DataSize.ofKilobytes(100));
+        filter = new UploadBudgetFilter(budget);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "waitTimeoutMillis", 50L);
+        ReflectionTestUtils.setField(filter, "maxRequestSize", DataSize.ofKilobytes(60));
+    }
+
+    @Test
+    void declaredSizeIsReservedWhileTheChainRuns() throws Exception {
+        AtomicReference<Object> reservedDuringChain = new AtomicReference<>();
+        FilterChain chain = (request, response) -> reservedDuringChain.set(budget.snapshot().get("reservedBytes"));
+
+        MockHttpServletResponse response = filter(upload(new byte[10_000]), chain);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(10_000L, reservedDuringChain.get());
+        assertEquals(0L, budget.snapshot().get("reservedBytes"));
+        assertEquals(0, budget.snapshot().get("inFlightUploads"));
+    }
+
+    @Test
+    void chunkedUploadReservesTheMaximumRequestSize() throws Exception {
+        AtomicReference<Object> reservedDuringChain = new AtomicReference<>();
+        FilterChain chain = (request, response) -> reservedDuringChain.set(budget.snapshot().get("reservedBytes"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/verify/1");
+        request.setContentType("multipart/form-data; boundary=x");
+        filter(request, chain);
+
+        assertEquals(DataSize.ofKilobytes(60).toBytes(), reservedDuringChain.get());
+    }
+
+    @Test
+    void budgetIsReleasedWhenTheChainThrows() {
+        FilterChain chain = (request, response) -> {
+            throw new ServletException("handler failed");
+        };
+
+        assertThrows(ServletException.class, () -> filter(upload(new byte[10_000]), chain));
+
+        assertEquals(0L, budget.snapshot().get("reservedBytes"));
+        assertEquals(0, budget.snapshot().get("inFlightUploads"));
+    }
+
+    @Test
+    void busyServerAnswers503WithRetryAfter() throws Exception {
+        assertTrue(budget.reserve(DataSize.ofKilobytes(95).toBytes(), 0));
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletRequest request = upload(new byte[10_000]);
+        request.addHeader("Origin", "http://localhost:4200");
+
+        MockHttpServletResponse response = filter(request, chain);
+
+        assertEquals(503, response.getStatus());
+        assertEquals("5", response.getHeader("Retry-After"));
+        assertEquals("close", response.getHeader("Connection"));
+        assertEquals("http://localhost:4200", response.getHeader("Access-Control-Allow-Origin"));
+        assertTrue(response.getContentType().startsWith("application/json"));
+        assertTrue(response.getContentAsString().contains("\"success\":false"));
+        assertNull(chain.getRequest());
+        assertEquals(1L, budget.snapshot().get("rejectedTotal"));
+    }
+
+    @Test
+    void interruptedRequestIsRefusedAndKeepsItsInterrupt() throws Exception {
+        assertTrue(budget.reserve(DataSize.ofKilobytes(95).toBytes(), 0));
+        MockFilterChain chain = new MockFilterChain();
+
+        Thread.currentThread().interrupt();
+        MockHttpServletResponse response;
+        try {
+            response = filter(upload(new byte[10_000]), chain);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        assertEquals(503, response.getStatus());
+        assertNull(chain.getRequest());
+        assertEquals(DataSize.ofKilobytes(95).toBytes(), budget.snapshot().get("reservedBytes"));
+    }
+
+    @Test
+    void otherRequestsAreNotCounted() throws Exception {
+        assertTrue(budget.reserve(DataSize.ofKilobytes(100).toBytes(), 0));
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/users/login");
+        request.setContentType("application/json");
+        request.setContent("{}".getBytes());
+
+        MockHttpServletResponse response = filter(request, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request, FilterChain chain)
+            throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest upload(byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/verify/1");
+        request.setContentType("multipart/form-data; boundary=x");
+        request.setContent(body);
+        return request;
+    }
+}
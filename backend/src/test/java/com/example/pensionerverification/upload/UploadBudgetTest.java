@@ -0,0 +1,114 @@
+package com.example.pensionerverification.upload;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadBudgetTest {
+
+    private final UploadBudget budget = new UploadBudget(DataSize.ofBytes(100));
+    private final ExecutorService waiters = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopWaiters() {
+        waiters.shutdownNow();
+    }
+
+    @Test
+    void reservationsAreAccountedUntilReleased() throws InterruptedException {
+        assertTrue(budget.reserve(60, 0));
+        assertTrue(budget.reserve(40, 0));
+        assertEquals(100L, budget.snapshot().get("reservedBytes"));
+        assertEquals(2, budget.snapshot().get("inFlightUploads"));
+
+        budget.release(60);
+        budget.release(40);
+
+        assertEquals(0L, budget.snapshot().get("reservedBytes"));
+        assertEquals(0, budget.snapshot().get("inFlightUploads"));
+        assertEquals(100L, budget.snapshot().get("peakReservedBytes"));
+        assertEquals(0L, budget.snapshot().get("waitedTotal"));
+    }
+
+    @Test
+    void requestLargerThanCapacityIsRejectedWithoutWaiting() throws InterruptedException {
+        long start = System.nanoTime();
+        assertFalse(budget.reserve(101, 10_000));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1L, budget.snapshot().get("rejectedTotal"));
+        assertEquals(0L, budget.snapshot().get("reservedBytes"));
+    }
+
+    @Test
+    void waitGivesUpAfterTheTimeout() throws InterruptedException {
+        assertTrue(budget.reserve(80, 0));
+
+        long start = System.nanoTime();
+        assertFalse(budget.reserve(30, 100));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1L, budget.snapshot().get("waitedTotal"));
+        assertEquals(1L, budget.snapshot().get("rejectedTotal"));
+        assertEquals(80L, budget.snapshot().get("reservedBytes"));
+    }
+
+    @Test
+    void waiterIsAdmittedOnceBytesAreReleased() throws Exception {
+        assertTrue(budget.reserve(80, 0));
+        Future<Boolean> waiter = waiters.submit(() -> budget.reserve(30, 10_000));
+        awaitWaiters(1);
+
+        budget.release(80);
+
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(30L, budget.snapshot().get("reservedBytes"));
+        assertEquals(1, budget.snapshot().get("inFlightUploads"));
+    }
+
+    @Test
+    void interruptedWaiterReservesNothing() throws Exception {
+        assertTrue(budget.reserve(80, 0));
+        Future<Boolean> waiter = waiters.submit(() -> budget.reserve(30, 10_000));
+        awaitWaiters(1);
+
+        waiter.cancel(true);
+        // Wait until the interrupted thread has left the monitor
+        waiters.shutdown();
+        assertTrue(waiters.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(80L, budget.snapshot().get("reservedBytes"));
+        assertEquals(1, budget.snapshot().get("inFlightUploads"));
+    }
+
+    @Test
+    void interruptBeforeWaitingThrows() throws InterruptedException {
+        assertTrue(budget.reserve(80, 0));
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedException.class, () -> budget.reserve(30, 10_000));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(80L, budget.snapshot().get("reservedBytes"));
+    }
+
+    private void awaitWaiters(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Long.valueOf(count).equals(budget.snapshot().get("waitedTotal"))) {
+            assertTrue(System.nanoTime() < deadline, "waiter never blocked");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.pensionerverification.upload;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.Part;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadValidationFilterTest {
+
+    private static final String BOUNDARY = "----formBoundaryQ3xT";
+
+    private UploadValidationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new UploadValidationFilter();
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "sniffBytes", 65536);
+        ReflectionTestUtils.setField(filter, "maxRequestSize", DataSize.ofMegabytes(50));
+        ReflectionTestUtils.setField(filter, "maxVideoSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(filter, "maxVideoDurationSeconds", 0.0);
+        ReflectionTestUtils.setField(filter, "maxVideoWidth", 0);
+        ReflectionTestUtils.setField(filter, "maxVideoHeight", 0);
+        ReflectionTestUtils.setField(filter, "maxImageSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(filter, "maxImageWidth", 8000);
+        ReflectionTestUtils.setField(filter, "maxImageHeight", 8000);
+    }
+
+    @Test
+    void acceptedImageGetsDetectedContentType() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = post("/api/upload-profile-picture/1",
+                multipart("image", "me.png", "application/octet-stream", MediaProbeTest.png(800, 600)), chain);
+
+        assertEquals(200, response.getStatus());
+        HttpServletRequest forwarded = (HttpServletRequest) chain.getRequest();
+        assertNotNull(forwarded);
+        Part part = forwarded.getPart("image");
+        assertEquals("image/png", part.getContentType());
+        assertEquals("me.png", part.getSubmittedFileName());
+    }
+
+    @Test
+    void wrongMagicBytesAreUnsupportedMediaType() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        byte[] html = "<html><body>not a picture</body></html>".getBytes(StandardCharsets.US_ASCII);
+        MockHttpServletResponse response = post("/api/upload-profile-picture/1",
+                multipart("image", "me.jpg", "image/jpeg", html), chain);
+
+        assertEquals(415, response.getStatus());
+        assertNull(chain.getRequest());
+        assertTrue(response.getContentAsString().contains("JPEG or PNG"));
+    }
+
+    @Test
+    void videoWhereImageExpectedIsUnsupportedMediaType() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = post("/api/users/register",
+                multipart("profilePicture", "me.mp4", "image/jpeg", MediaProbeTest.mp4("isom", 3, 640, 480)), chain);
+
+        assertEquals(415, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void oversizedPartIsPayloadTooLarge() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        byte[] image = Arrays.copyOf(MediaProbeTest.png(800, 600), 100 * 1024);
+        MockHttpServletResponse response = post("/api/upload-profile-picture/1",
+                multipart("image", "me.png", "image/png", image), chain);
+
+        assertEquals(413, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void oversizedResolutionIsBadRequest() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = post("/api/upload-profile-picture/1",
+                multipart("image", "me.png", "image/png", MediaProbeTest.png(9000, 100)), chain);
+
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getContentAsString().contains("9000x100"));
+    }
+
+    @Test
+    void resolutionErrorNamesOnlyTheConfiguredLimit() throws Exception {
+        ReflectionTestUtils.setField(filter, "maxVideoWidth", 1920);
+        MockHttpServletResponse response = post("/api/verify/1",
+                multipart("video", "clip.mp4", "video/mp4", MediaProbeTest.mp4("isom", 10, 3840, 2160)),
+                new MockFilterChain());
+
+        assertEquals(400, response.getStatus());
+        String message = response.getContentAsString();
+        assertTrue(message.contains("maximum width of 1920"), message);
+        assertFalse(message.contains("1920x0"), message);
+    }
+
+    @Test
+    void pngClaimingHugeSizeIsBadRequest() throws Exception {
+        MockHttpServletResponse response = post("/api/upload-profile-picture/1",
+                multipart("image", "me.png", "image/png", MediaProbeTest.png(0x8000_0000, 100)), new MockFilterChain());
+
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    void longFourKVideoPassesWithDefaultLimits() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = post("/api/verify/1",
+                multipart("video", "clip.mp4", "video/mp4", MediaProbeTest.mp4("isom", 95, 3840, 2160)), chain);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("video/mp4", ((HttpServletRequest) chain.getRequest()).getPart("video").getContentType());
+    }
+
+    @Test
+    void configuredVideoLimitsAreEnforced() throws Exception {
+        ReflectionTestUtils.setField(filter, "maxVideoDurationSeconds", 60.0);
+        MockHttpServletResponse tooLong = post("/api/verify/1",
+                multipart("video", "clip.mp4", "video/mp4", MediaProbeTest.mp4("isom", 95, 1280, 720)),
+                new MockFilterChain());
+        assertEquals(400, tooLong.getStatus());
+        assertTrue(tooLong.getContentAsString().contains("Video too long"));
+
+        ReflectionTestUtils.setField(filter, "maxVideoWidth", 1920);
+        ReflectionTestUtils.setField(filter, "maxVideoHeight", 1920);
+        MockHttpServletResponse tooLarge = post("/api/verify/1",
+                multipart("video", "clip.mp4", "video/mp4", MediaProbeTest.mp4("isom", 10, 3840, 2160)),
+                new MockFilterChain());
+        assertEquals(400, tooLarge.getStatus());
+    }
+
+    @Test
+    void truncatedBodyIsBadRequest() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        byte[] body = multipart("image", "me.png", "image/png", MediaProbeTest.png(800, 600));
+        MockHttpServletResponse response = post("/api/upload-profile-picture/1",
+                Arrays.copyOf(body, body.length - 10), chain);
+
+        assertEquals(400, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void otherEndpointsAreNotFiltered() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        byte[] html = "<html></html>".getBytes(StandardCharsets.US_ASCII);
+        MockHttpServletResponse response = post("/api/users/import",
+                multipart("file", "users.csv", "text/csv", html), chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    private MockHttpServletResponse post(String uri, byte[] body, MockFilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static byte[] multipart(String name, String fileName, String contentType, byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"username\"\r\n\r\n"
+                + "pensioner1\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(content);
+        out.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+}